@@ -0,0 +1,10 @@
+#!/bin/sh
+# Compiles the sources into out/benchmarks and runs the benchmarks, arguments are passed on, e.g.
+#   ./benchmarks.sh smo.wss2 --quick
+# JVM_OPTS (e.g. -Xmx4g) apply to the forked benchmark JVMs as well.
+set -e
+cd "$(dirname "$0")"
+rm -rf out/benchmarks
+mkdir -p out/benchmarks
+javac -nowarn -cp 'lib/*' -d out/benchmarks $(find src -name '*.java')
+exec java $JVM_OPTS -cp "out/benchmarks:lib/*" sample.benchmarks.Benchmarks "$@"
@@ -0,0 +1,206 @@
+package sample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory mapped data set in a compact binary format. The file consists of
+ *
+ *   header   magic, version, layout, size, dimension (int32), nonzeros (int64)
+ *   labels   size * int32, padded to 8 bytes
+ *   features dense:  size * dimension * float64, row-major
+ *            sparse: (size + 1) * int64 row offsets, nonzeros * int32 indices
+ *                    (padded to 8 bytes), nonzeros * float64 values
+ *
+ * all little endian. Loading maps the blocks, so nothing is parsed. The
+ * solvers work on heap arrays, so toTrainingSet and toDataSet copy the
+ * features once and each JVM holds its own copy, only the load is faster
+ * than parsing text. row reads a single row from the mapping, which lets a
+ * file that does not fit into the heap be streamed.
+ */
+public class BinaryDataSet {
+
+    public static final int MAGIC = 0x53564d44; // "SVMD"
+    public static final int VERSION = 1;
+    public static final int DENSE = 0;
+    public static final int SPARSE = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    public final int size;
+    public final int dimension;
+    public final int layout;
+    public final long nonZeros;
+
+    private final IntBuffer labels;
+    private final DoubleBuffer values;
+    private final LongBuffer rowOffsets; // sparse only
+    private final IntBuffer indices; // sparse only
+
+    private BinaryDataSet(FileChannel channel) throws IOException {
+        ByteBuffer header = map(channel, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION)
+            throw new IOException("not a binary data set");
+        layout = header.getInt();
+        size = header.getInt();
+        dimension = header.getInt();
+        header.getInt(); // reserved
+        nonZeros = header.getLong();
+
+        long offset = HEADER_SIZE;
+        labels = map(channel, offset, 4L * size).asIntBuffer();
+        offset += pad(4L * size);
+        if (layout == DENSE) {
+            rowOffsets = null;
+            indices = null;
+            values = map(channel, offset, 8L * size * dimension).asDoubleBuffer();
+        } else if (layout == SPARSE) {
+            rowOffsets = map(channel, offset, 8L * (size + 1)).asLongBuffer();
+            offset += 8L * (size + 1);
+            indices = map(channel, offset, 4L * nonZeros).asIntBuffer();
+            offset += pad(4L * nonZeros);
+            values = map(channel, offset, 8L * nonZeros).asDoubleBuffer();
+        } else {
+            throw new IOException("unknown layout " + layout);
+        }
+    }
+
+    public static BinaryDataSet open(Path path) throws IOException {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryDataSet(channel);
+        }
+    }
+
+    public int label(int i) {
+        return labels.get(i);
+    }
+
+    public double get(int row, int feature) {
+        if (layout == DENSE)
+            return values.get(row * dimension + feature);
+        for (long k = rowOffsets.get(row); k < rowOffsets.get(row + 1); k++)
+            if (indices.get((int) k) == feature)
+                return values.get((int) k);
+        return 0;
+    }
+
+    // copies row i into the given array of length dimension
+    public void row(int i, double[] into) {
+        if (layout == DENSE) {
+            values.get(i * dimension, into, 0, dimension);
+            return;
+        }
+        Arrays.fill(into, 0);
+        for (long k = rowOffsets.get(i); k < rowOffsets.get(i + 1); k++)
+            into[indices.get((int) k)] = values.get((int) k);
+    }
+
+    public DataSet toDataSet() {
+        int[] y = new int[size];
+        labels.get(0, y);
+        return new DataSet(size, dimension, this.features(), y);
+    }
+
+    // same as new TrainingSet(toDataSet()), without the intermediate labels
+    public TrainingSet toTrainingSet() {
+        byte[] y = new byte[size];
+        for (int i = 0; i < size; i++)
+            y[i] = (byte) (labels.get(i) >= 1 ? 1 : -1);
+        return new TrainingSet(size, dimension, this.features(), y);
+    }
+
+    private double[] features() {
+        double[] x = new double[size * dimension];
+        if (layout == DENSE) {
+            values.get(0, x);
+        } else {
+            for (int i = 0; i < size; i++)
+                for (long k = rowOffsets.get(i); k < rowOffsets.get(i + 1); k++)
+                    x[i * dimension + indices.get((int) k)] = values.get((int) k);
+        }
+        return x;
+    }
+
+    public static void write(DataSet dataSet, Path path) throws IOException {
+        long nonZeros = 0;
+        for (double value : dataSet.x)
+            if (value != 0)
+                nonZeros++;
+        // 12 bytes per stored value in the sparse layout versus 8 per cell
+        int layout = 12 * nonZeros + 8L * (dataSet.size + 1) < 8L * dataSet.x.length ? SPARSE : DENSE;
+        write(dataSet, path, layout, nonZeros);
+    }
+
+    private static void write(DataSet dataSet, Path path, int layout, long nonZeros) throws IOException {
+        final int size = dataSet.size, dimension = dataSet.dimension;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(layout).putInt(size).putInt(dimension).putInt(0).putLong(nonZeros);
+
+            long offset = HEADER_SIZE;
+            map(channel, FileChannel.MapMode.READ_WRITE, offset, 4L * size).asIntBuffer().put(dataSet.y, 0, size);
+            offset += pad(4L * size);
+            if (layout == DENSE) {
+                map(channel, FileChannel.MapMode.READ_WRITE, offset, 8L * size * dimension).asDoubleBuffer()
+                        .put(dataSet.x, 0, size * dimension);
+                return;
+            }
+            LongBuffer rowOffsets = map(channel, FileChannel.MapMode.READ_WRITE, offset, 8L * (size + 1)).asLongBuffer();
+            offset += 8L * (size + 1);
+            IntBuffer indices = map(channel, FileChannel.MapMode.READ_WRITE, offset, 4L * nonZeros).asIntBuffer();
+            offset += pad(4L * nonZeros);
+            DoubleBuffer values = map(channel, FileChannel.MapMode.READ_WRITE, offset, 8L * nonZeros).asDoubleBuffer();
+            long k = 0;
+            for (int i = 0; i < size; i++) {
+                rowOffsets.put(k);
+                for (int j = 0; j < dimension; j++) {
+                    double value = dataSet.x[i * dimension + j];
+                    if (value != 0) {
+                        indices.put(j);
+                        values.put(value);
+                        k++;
+                    }
+                }
+            }
+            rowOffsets.put(k);
+        }
+    }
+
+    // converts a libsvm text file, e.g. "data/real3.csv data/real3.bin"
+    public static void convert(Path source, Path target) throws IOException {
+        write(LibSVMReader.read(source), target);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BinaryDataSet <libsvm file> <binary file>");
+            System.exit(1);
+        }
+        convert(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return map(channel, FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("block of " + length + " bytes is too large to map");
+        return channel.map(mode, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long pad(long length) {
+        return (length + 7) & ~7L;
+    }
+}
@@ -1,44 +1,28 @@
 package sample;
 
-import com.opencsv.CSVReader;
-
-import java.io.File;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 public class CSVImporter {
 
     public static List<FeatureVector> read(String filename) {
-        List<String[]> lines;
+        DataSet dataSet = readDataSet(Paths.get("data", filename + ".csv"));
+        if (dataSet == null)
+            return null;
+        return dataSet.toFeatureVectors();
+    }
 
-        String filePath = "data/" + filename + ".csv";
-        File file = new File(filePath);
-        if (!file.exists())
+    public static DataSet readDataSet(Path path) {
+        if (!Files.exists(path))
             return null;
 
         try {
-            CSVReader reader = new CSVReader(new FileReader(filePath), ' ');
-            lines = reader.readAll();
+            return LibSVMReader.read(path);
         } catch (Exception e) {
-            lines = new ArrayList<>();
+            return new DataSet(0, 0, new double[0], new int[0]);
         }
-        int num = lines.size();
-        List<FeatureVector> vectors = new ArrayList<>();
-        for (int i = 0; i < num; i++) {
-            String[] line = lines.get(i);
-            double x1 = parseValue(line[1]);
-            double x2 = parseValue(line[2]);
-            int y = Integer.parseInt(line[0]);
-            FeatureVector v = new FeatureVector(x1, x2, y);
-            vectors.add(v);
-        }
-        return vectors;
-    }
-
-    private static double parseValue(String s) {
-        String[] parts = s.split(":");
-        return Double.valueOf(parts[1]);
     }
 
 }
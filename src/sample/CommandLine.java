@@ -0,0 +1,391 @@
+package sample;
+
+import sample.kernels.*;
+import sample.solvers.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Headless training and evaluation, for batch jobs without a display.
+ * Prints one JSON object with timings and results to stdout, e.g.
+ *
+ *   java -cp out sample.CommandLine data/real3.csv --solver smo --c 1 --selection wss2 --test data/real3-t.csv
+ */
+public class CommandLine {
+
+    private static final String USAGE = "usage: CommandLine <data file> [--solver smo|esz|dcd] [--kernel dot|poly|rbf|sigmoid]"
+            + " [--gamma <1/dimension>] [--coef0 0] [--degree 2] [--epsilon 1e-5] [--c 1] [--selection platt|wss1|wss2] [--shrinking]"
+            + " [--max-steps <max(10000000, 100*size)>] [--metrics] [--iterations 10000000] [--delta 1e-5] [--test <data file>]"
+            + " [--save <model file>] [--warm <model file>] [--multiclass ovo|ovr] [--matrix 0] [--float] [--offheap]"
+            + " [--online pegasos|lasvm] [--lambda 1e-4] [--budget 1000]";
+
+    private String trainingPath;
+    private String testPath;
+    private String modelPath;
+    private String warmPath;
+    private String multiClassName;
+    private String onlineName;
+    private String solverName = "smo";
+    private String kernelName = "dot";
+    private double gamma = Double.NaN; // default depends on the kernel
+    private double coef0 = Double.NaN;
+    private int degree = 2;
+    private String selectionName = "platt";
+    private double epsilon = 1e-5;
+    private double c = 1;
+    private boolean shrinking = false;
+    private long maxSteps = 0; // SMO with a selection, 0 for its default
+    private boolean metrics = false;
+    private int matrixSize = 0; // MB
+    private boolean singlePrecision = false;
+    private boolean offHeap = false;
+    private double lambda = 1e-4;
+    private int budget = 1000;
+    private int iterations = 10000000;
+    private double delta = 1e-5;
+
+    public static void main(String[] args) {
+        CommandLine commandLine = new CommandLine();
+        try {
+            commandLine.parse(args);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        try {
+            System.out.println(commandLine.run());
+        } catch (IOException e) {
+            System.err.println("could not read data: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                if (trainingPath != null)
+                    throw new IllegalArgumentException("unexpected argument " + arg);
+                trainingPath = arg;
+                continue;
+            }
+            if (arg.equals("--shrinking")) {
+                shrinking = true;
+                continue;
+            }
+            if (arg.equals("--metrics")) {
+                metrics = true;
+                continue;
+            }
+            if (arg.equals("--float")) {
+                singlePrecision = true;
+                continue;
+            }
+            if (arg.equals("--offheap")) {
+                offHeap = true;
+                continue;
+            }
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--solver": solverName = value; break;
+                case "--kernel": kernelName = value; break;
+                case "--gamma": gamma = Double.parseDouble(value); break;
+                case "--coef0": coef0 = Double.parseDouble(value); break;
+                case "--degree": degree = Integer.parseInt(value); break;
+                case "--selection": selectionName = value; break;
+                case "--epsilon": epsilon = Double.parseDouble(value); break;
+                case "--c": c = Double.parseDouble(value); break;
+                case "--max-steps": maxSteps = Long.parseLong(value); break;
+                case "--iterations": iterations = Integer.parseInt(value); break;
+                case "--delta": delta = Double.parseDouble(value); break;
+                case "--test": testPath = value; break;
+                case "--save": modelPath = value; break;
+                case "--warm": warmPath = value; break;
+                case "--multiclass": multiClassName = value; break;
+                case "--matrix": matrixSize = Integer.parseInt(value); break;
+                case "--online": onlineName = value; break;
+                case "--lambda": lambda = Double.parseDouble(value); break;
+                case "--budget": budget = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (trainingPath == null)
+            throw new IllegalArgumentException("missing data file");
+    }
+
+    private String run() throws IOException {
+        if (multiClassName != null)
+            return this.runMultiClass();
+        if (onlineName != null)
+            return this.runOnline();
+        long start = System.nanoTime();
+        TrainingSet trainingSet = loadTrainingSet(Paths.get(trainingPath));
+        long loaded = System.nanoTime();
+
+        SVM svm = new SVM(trainingSet, this.createKernel(trainingSet.dimension), epsilon);
+        svm.matrixSize = matrixSize;
+        svm.singlePrecision = singlePrecision;
+        svm.offHeap = offHeap;
+        if (warmPath != null)
+            svm.warmStart(ModelFile.read(Paths.get(warmPath)));
+        Solver solver = this.createSolver();
+        SolverMetrics solverMetrics = metrics ? new SolverMetrics() : null;
+        solver.setMetrics(solverMetrics);
+        solver.solve(svm);
+        long trained = System.nanoTime();
+
+        long rounds;
+        if (solver instanceof SMO)
+            rounds = ((SMO) solver).getRounds();
+        else if (solver instanceof DualCoordinateDescent)
+            rounds = ((DualCoordinateDescent) solver).getRounds();
+        else
+            rounds = ((ESZ) solver).getGenerations();
+        Json json = new Json();
+        json.add("data", trainingPath);
+        json.add("size", trainingSet.size);
+        json.add("dimension", trainingSet.dimension);
+        json.add("solver", solverName);
+        json.add("kernel", kernelName);
+        json.add("loadMillis", (loaded - start) / 1e6);
+        json.add("trainMillis", (trained - loaded) / 1e6);
+        json.add("rounds", rounds);
+        if (solver instanceof SMO)
+            json.add("converged", ((SMO) solver).isConverged());
+        if (solver instanceof DualCoordinateDescent) {
+            // works on w, asking for the kernel cache or matrix here would only build them
+            json.add("converged", ((DualCoordinateDescent) solver).isConverged());
+        } else {
+            if (svm.getKernelMatrix() != null)
+                json.add("kernelMatrix", svm.getKernelMatrix().toString());
+            json.add("kernelEvaluations", svm.getKernelEvaluations());
+            json.add("kernelCacheHits", svm.getKernelCache().getHits());
+            json.add("kernelCacheMisses", svm.getKernelCache().getMisses());
+        }
+        json.add("supportVectors", svm.getSupportVectors().length);
+        json.add("b", svm.b);
+        json.add("trainingAccuracy", svm.assessAccuracy(trainingSet));
+        if (solverMetrics != null) {
+            for (Map.Entry<String, Number> metric : solverMetrics.toMap().entrySet()) {
+                if (metric.getValue() instanceof Double)
+                    json.add("metrics." + metric.getKey(), metric.getValue().doubleValue());
+                else
+                    json.add("metrics." + metric.getKey(), metric.getValue().longValue());
+            }
+        }
+        if (testPath != null) {
+            long testStart = System.nanoTime();
+            TrainingSet testSet = loadTrainingSet(Paths.get(testPath));
+            json.add("testAccuracy", svm.assessAccuracy(testSet));
+            json.add("testMillis", (System.nanoTime() - testStart) / 1e6);
+        }
+        if (modelPath != null) {
+            long saveStart = System.nanoTime();
+            ModelFile.write(svm.compile(), Paths.get(modelPath));
+            json.add("model", modelPath);
+            json.add("saveMillis", (System.nanoTime() - saveStart) / 1e6);
+        }
+        return json.toString();
+    }
+
+    // trains on the raw labels, only the solver options apply
+    private String runMultiClass() throws IOException {
+        long start = System.nanoTime();
+        DataSet dataSet = load(Paths.get(trainingPath));
+        long loaded = System.nanoTime();
+
+        MultiClassTrainer trainer = new MultiClassTrainer();
+        switch (multiClassName) {
+            case "ovo": trainer.strategy = MultiClassModel.Strategy.ONE_VS_ONE; break;
+            case "ovr": trainer.strategy = MultiClassModel.Strategy.ONE_VS_REST; break;
+            default: throw new IllegalArgumentException("unknown multi-class strategy " + multiClassName);
+        }
+        trainer.epsilon = epsilon;
+        trainer.solver = this::createSolver;
+        MultiClassModel model = trainer.train(dataSet, () -> this.createKernel(dataSet.dimension));
+        long trained = System.nanoTime();
+
+        Json json = new Json();
+        json.add("data", trainingPath);
+        json.add("size", dataSet.size);
+        json.add("dimension", dataSet.dimension);
+        json.add("classes", model.getClasses().length);
+        json.add("strategy", multiClassName);
+        json.add("solver", solverName);
+        json.add("kernel", kernelName);
+        json.add("loadMillis", (loaded - start) / 1e6);
+        json.add("trainMillis", (trained - loaded) / 1e6);
+        json.add("problems", model.getProblemCount());
+        json.add("supportVectors", model.getSupportVectorCount());
+        json.add("trainingAccuracy", model.assessAccuracy(dataSet));
+        if (testPath != null) {
+            long testStart = System.nanoTime();
+            json.add("testAccuracy", model.assessAccuracy(load(Paths.get(testPath))));
+            json.add("testMillis", (System.nanoTime() - testStart) / 1e6);
+        }
+        return json.toString();
+    }
+
+    // streams the training file once, so it never has to fit into memory
+    private String runOnline() throws IOException {
+        long start = System.nanoTime();
+        Path path = Paths.get(trainingPath);
+        BinaryDataSet binary = path.toString().endsWith(".bin") ? BinaryDataSet.open(path) : null;
+        final int dimension = binary != null ? binary.dimension : LibSVMReader.dimension(path);
+        long scanned = System.nanoTime();
+
+        OnlineLearner learner;
+        switch (onlineName) {
+            case "pegasos":
+                if (!kernelName.equals("dot"))
+                    throw new IllegalArgumentException("pegasos needs the dot kernel");
+                learner = new Pegasos(dimension, lambda);
+                break;
+            case "lasvm":
+                learner = new LASVM(this.createKernel(dimension), dimension, c, budget);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown online learner " + onlineName);
+        }
+        if (binary != null) {
+            for (int i = 0; i < binary.size; i++) {
+                double[] x = new double[dimension];
+                binary.row(i, x);
+                learner.learn(new FeatureVector(x, binary.label(i)));
+            }
+        } else {
+            LibSVMReader.forEach(path, dimension, learner::learn);
+        }
+        long trained = System.nanoTime();
+
+        Model model = learner.getModel();
+        Json json = new Json();
+        json.add("data", trainingPath);
+        json.add("size", learner.getCount());
+        json.add("dimension", dimension);
+        json.add("online", onlineName);
+        json.add("kernel", kernelName);
+        json.add("scanMillis", (scanned - start) / 1e6);
+        json.add("trainMillis", (trained - scanned) / 1e6);
+        if (learner instanceof LASVM)
+            json.add("supportVectors", model.getSupportVectorCount()); // pegasos keeps only w
+        json.add("b", model.getB());
+        if (testPath != null) {
+            long testStart = System.nanoTime();
+            TrainingSet testSet = loadTrainingSet(Paths.get(testPath));
+            double[] outputs = model.batchOutput(testSet.x);
+            int correct = 0;
+            for (int i = 0; i < testSet.size; i++)
+                if (Math.signum(outputs[i]) == testSet.y[i])
+                    correct++;
+            json.add("testAccuracy", (double) correct / testSet.size);
+            json.add("testMillis", (System.nanoTime() - testStart) / 1e6);
+        }
+        if (modelPath != null) {
+            ModelFile.write(model, Paths.get(modelPath));
+            json.add("model", modelPath);
+        }
+        return json.toString();
+    }
+
+    private static DataSet load(Path path) throws IOException {
+        if (path.toString().endsWith(".bin"))
+            return BinaryDataSet.open(path).toDataSet();
+        return LibSVMReader.read(path);
+    }
+
+    // a binary file is copied from the mapping once, straight into the training set
+    private static TrainingSet loadTrainingSet(Path path) throws IOException {
+        if (path.toString().endsWith(".bin"))
+            return BinaryDataSet.open(path).toTrainingSet();
+        return new TrainingSet(LibSVMReader.read(path));
+    }
+
+    // gamma defaults to 1 for the polynomial kernel and to 1/dimension otherwise (as in libsvm)
+    private Kernel createKernel(int dimension) {
+        switch (kernelName) {
+            case "dot": return new DotProductKernel();
+            case "poly": return new PolynomialKernel(or(gamma, 1), or(coef0, 1), degree);
+            case "rbf": return new RBFKernel(or(gamma, 1.0 / dimension));
+            case "sigmoid": return new SigmoidKernel(or(gamma, 1.0 / dimension), or(coef0, 0));
+            default: throw new IllegalArgumentException("unknown kernel " + kernelName);
+        }
+    }
+
+    private static double or(double value, double fallback) {
+        return Double.isNaN(value) ? fallback : value;
+    }
+
+    private Solver createSolver() {
+        switch (solverName) {
+            case "smo":
+                SMO smo = new SMO(c, this.createSelection());
+                smo.setShrinking(shrinking);
+                smo.setMaxIterations(maxSteps);
+                return smo;
+            case "esz":
+                return new ESZ(iterations, delta);
+            case "dcd":
+                DualCoordinateDescent dcd = new DualCoordinateDescent(c);
+                dcd.setShrinking(shrinking);
+                return dcd;
+            default:
+                throw new IllegalArgumentException("unknown solver " + solverName);
+        }
+    }
+
+    private WorkingSetSelection createSelection() {
+        switch (selectionName) {
+            case "platt": return null;
+            case "wss1": return new FirstOrderSelection();
+            case "wss2": return new SecondOrderSelection();
+            default: throw new IllegalArgumentException("unknown selection " + selectionName);
+        }
+    }
+
+    // minimal writer for a flat JSON object
+    private static class Json {
+
+        private final StringBuilder builder = new StringBuilder("{");
+
+        void add(String key, String value) {
+            this.key(key).append('"');
+            for (char ch : value.toCharArray()) {
+                if (ch == '"' || ch == '\\')
+                    builder.append('\\');
+                builder.append(ch);
+            }
+            builder.append('"');
+        }
+
+        void add(String key, long value) {
+            this.key(key).append(value);
+        }
+
+        void add(String key, boolean value) {
+            this.key(key).append(value);
+        }
+
+        void add(String key, double value) {
+            this.key(key).append(Double.isFinite(value) ? String.format(Locale.ROOT, "%.6g", value) : "null");
+        }
+
+        private StringBuilder key(String key) {
+            if (builder.length() > 1)
+                builder.append(',');
+            return builder.append('"').append(key).append("\":");
+        }
+
+        @Override
+        public String toString() {
+            return builder + "}";
+        }
+    }
+}
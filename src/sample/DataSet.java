@@ -0,0 +1,40 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Labelled samples stored in primitive arrays. The features of all rows live
+ * in one row-major array, missing (sparse) features are zero. Labels are kept
+ * as read from the file.
+ */
+public class DataSet {
+
+    public final int size;
+    public final int dimension;
+    public final double[] x; // row-major, size * dimension
+    public final int[] y;
+
+    public DataSet(int size, int dimension, double[] x, int[] y) {
+        this.size = size;
+        this.dimension = dimension;
+        this.x = x;
+        this.y = y;
+    }
+
+    public double get(int row, int feature) {
+        return x[row * dimension + feature];
+    }
+
+    public double[] row(int i) {
+        return Arrays.copyOfRange(x, i * dimension, (i + 1) * dimension);
+    }
+
+    public List<FeatureVector> toFeatureVectors() {
+        List<FeatureVector> vectors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            vectors.add(new FeatureVector(this.row(i), y[i]));
+        return vectors;
+    }
+}
@@ -0,0 +1,79 @@
+package sample;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Raster image of a model's decision function over a rectangle spanned by the
+ * first two features, the remaining features are taken from a base point.
+ * Each pixel is colored by class, darker inside the margin (|f| < 1), with
+ * the decision contour (f = 0) in black and the margins (f = +-1) in gray.
+ * The values of all pixels are computed in one batch, which Model splits
+ * into tiles scored in parallel.
+ */
+public class DecisionSurface {
+
+    private static final int POSITIVE = 0xffffd8d8;
+    private static final int POSITIVE_MARGIN = 0xffffb8b8;
+    private static final int NEGATIVE = 0xffd8d8ff;
+    private static final int NEGATIVE_MARGIN = 0xffb8b8ff;
+    private static final int CONTOUR = 0xff000000;
+    private static final int MARGIN = 0xff808080;
+
+    public final double xMin, xMax, yMin, yMax;
+    private final Model model;
+    private final double[] base;
+
+    public DecisionSurface(Model model, double xMin, double xMax, double yMin, double yMax, double[] base) {
+        this.model = model;
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        this.base = base;
+    }
+
+    // row 0 of the image is at yMax
+    public BufferedImage render(int width, int height) {
+        final int d = model.getDimension();
+        final double stepX = (xMax - xMin) / width, stepY = (yMax - yMin) / height;
+        double[] grid = new double[width * height * d];
+        int k = 0;
+        for (int row = 0; row < height; row++) {
+            final double y = yMax - (row + 0.5) * stepY;
+            for (int column = 0; column < width; column++) {
+                System.arraycopy(base, 0, grid, k, d);
+                grid[k] = xMin + (column + 0.5) * stepX;
+                grid[k + 1] = y;
+                k += d;
+            }
+        }
+        final double[] values = model.batchOutput(grid);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                final int i = row * width + column;
+                final double value = values[i];
+                // a line runs between pixels whose values lie on different sides of its level
+                final double right = column + 1 < width ? values[i + 1] : value;
+                final double below = row + 1 < height ? values[i + width] : value;
+                if (crosses(value, right, 0) || crosses(value, below, 0))
+                    pixels[i] = CONTOUR;
+                else if (crosses(value, right, 1) || crosses(value, below, 1)
+                        || crosses(value, right, -1) || crosses(value, below, -1))
+                    pixels[i] = MARGIN;
+                else if (value > 0)
+                    pixels[i] = value < 1 ? POSITIVE_MARGIN : POSITIVE;
+                else
+                    pixels[i] = value > -1 ? NEGATIVE_MARGIN : NEGATIVE;
+            }
+        }
+        return image;
+    }
+
+    private static boolean crosses(double a, double b, double level) {
+        return (a > level) != (b > level);
+    }
+}
@@ -0,0 +1,316 @@
+package sample;
+
+import sample.kernels.*;
+import sample.solvers.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * k-fold cross-validation over a grid of kernels, epsilons and values of C.
+ * The rows are shuffled once into one store, so every fold is a contiguous
+ * block of it and the training set of a fold is built with two block copies.
+ * The solvers index a training set from row 0, so it is a copy of (k-1)/k of
+ * the store rather than a view. It is read-only and shared by the solves of
+ * its fold. The tasks are queued fold by fold, and a training set is built
+ * by the first task of its fold and dropped after the last one, so about one
+ * copy per thread is alive besides the store. One task per kernel, epsilon
+ * and fold walks the values of C in ascending order on a single SVM, so each
+ * solve warm-starts from the previous alphas and reuses the kernel cache. The
+ * tasks run on a fixed thread pool.
+ *
+ *   java -cp out sample.GridSearch data/real2.csv --kernel dot,rbf --gamma 1e-4,1e-3 --c 0.1,1,10
+ */
+public class GridSearch {
+
+    private static final String USAGE = "usage: GridSearch <data file> [--folds 5] [--c 0.1,1,10]"
+            + " [--epsilon 1e-5] [--kernel dot,poly,rbf,sigmoid] [--gamma 1e-3] [--threads <cores>] [--seed 1]";
+
+    public static class Result {
+        public final String kernel;
+        public final double epsilon;
+        public final double c;
+        public final double accuracy; // mean over the folds
+        public final double deviation;
+        public final double supportVectors; // mean over the folds
+        public final double trainMillis; // summed over the folds
+
+        Result(String kernel, double epsilon, double c, double[] accuracies, double supportVectors, double trainMillis) {
+            this.kernel = kernel;
+            this.epsilon = epsilon;
+            this.c = c;
+            double mean = 0;
+            for (double accuracy : accuracies)
+                mean += accuracy / accuracies.length;
+            double variance = 0;
+            for (double accuracy : accuracies)
+                variance += (accuracy - mean) * (accuracy - mean) / Math.max(1, accuracies.length - 1);
+            this.accuracy = mean;
+            this.deviation = Math.sqrt(variance);
+            this.supportVectors = supportVectors;
+            this.trainMillis = trainMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-24s %8.0e %8g %9.4f %9.4f %8.1f %10.1f",
+                    kernel, epsilon, c, accuracy, deviation, supportVectors, trainMillis);
+        }
+    }
+
+    public int folds = 5;
+    public double[] cs = {0.1, 1, 10};
+    public double[] epsilons = {1e-5};
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public int cacheSize = 400; // MB, divided among the concurrent solves
+    public long seed = 1;
+
+    private final List<String> kernelNames = new ArrayList<>();
+    private final List<Supplier<Kernel>> kernels = new ArrayList<>();
+
+    public void addKernel(String name, Supplier<Kernel> kernel) {
+        kernelNames.add(name);
+        kernels.add(kernel);
+    }
+
+    public static void main(String[] args) {
+        GridSearch search = new GridSearch();
+        String path = null;
+        String[] kernelNames = {"dot"};
+        double[] gammas = {1e-3};
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    path = args[i];
+                    continue;
+                }
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("missing value for " + args[i]);
+                String value = args[++i];
+                switch (args[i - 1]) {
+                    case "--folds": search.folds = Integer.parseInt(value); break;
+                    case "--c": search.cs = parseList(value); break;
+                    case "--epsilon": search.epsilons = parseList(value); break;
+                    case "--kernel": kernelNames = value.split(","); break;
+                    case "--gamma": gammas = parseList(value); break;
+                    case "--threads": search.threads = Integer.parseInt(value); break;
+                    case "--seed": search.seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("unknown option " + args[i - 1]);
+                }
+            }
+            if (path == null)
+                throw new IllegalArgumentException("missing data file");
+            for (String name : kernelNames)
+                search.addKernels(name, gammas);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        TrainingSet data;
+        try {
+            data = new TrainingSet(LibSVMReader.read(Paths.get(path)));
+        } catch (IOException e) {
+            System.err.println("could not read data: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        long start = System.nanoTime();
+        List<Result> results = search.run(data);
+        System.out.println(format(results));
+        System.out.println(String.format(Locale.ROOT, "%d solves in %.1f s on %d threads",
+                results.size() * search.folds, (System.nanoTime() - start) / 1e9, search.threads));
+    }
+
+    private void addKernels(String name, double[] gammas) {
+        switch (name) {
+            case "dot":
+                this.addKernel("dot", DotProductKernel::new);
+                return;
+            case "poly":
+                for (double gamma : gammas)
+                    this.addKernel("poly gamma=" + gamma, () -> new PolynomialKernel(gamma, 1, 2));
+                return;
+            case "rbf":
+                for (double gamma : gammas)
+                    this.addKernel("rbf gamma=" + gamma, () -> new RBFKernel(gamma));
+                return;
+            case "sigmoid":
+                for (double gamma : gammas)
+                    this.addKernel("sigmoid gamma=" + gamma, () -> new SigmoidKernel(gamma, 0));
+                return;
+            default:
+                throw new IllegalArgumentException("unknown kernel " + name);
+        }
+    }
+
+    private static double[] parseList(String value) {
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            values[i] = Double.parseDouble(parts[i]);
+        return values;
+    }
+
+    // results ranked by accuracy, ties broken by fewer support vectors
+    public List<Result> run(TrainingSet data) {
+        if (kernels.isEmpty())
+            throw new IllegalStateException("no kernels added");
+        if (folds < 2 || folds > data.size)
+            throw new IllegalArgumentException("cannot split " + data.size + " rows into " + folds + " folds");
+        final double[] cPath = cs.clone();
+        Arrays.sort(cPath);
+
+        final TrainingSet store = shuffle(data, new Random(seed));
+        final int[] bounds = new int[folds + 1];
+        for (int f = 0; f <= folds; f++)
+            bounds[f] = (int) ((long) f * store.size / folds);
+        final Folds trainingSets = new Folds(store, bounds, kernels.size() * epsilons.length);
+
+        // [kernel][epsilon][fold][c] -> accuracy, support vectors, milliseconds
+        final double[][][][][] scores = new double[kernels.size()][epsilons.length][folds][cPath.length][];
+        final int concurrency = Math.max(1, Math.min(threads, kernels.size() * epsilons.length * folds));
+        final int cacheSizePerSolve = Math.max(1, cacheSize / concurrency);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int f = 0; f < folds; f++)
+            for (int k = 0; k < kernels.size(); k++)
+                for (int e = 0; e < epsilons.length; e++) {
+                    final int kernel = k, epsilon = e, fold = f;
+                    tasks.add(() -> {
+                        SVM svm = new SVM(trainingSets.acquire(fold), kernels.get(kernel).get(), epsilons[epsilon]);
+                        svm.cacheSize = cacheSizePerSolve;
+                        svm.matrixSize = 0; // the row cache suits WSS2 better than a matrix per task
+                        try {
+                            for (int c = 0; c < cPath.length; c++)
+                                scores[kernel][epsilon][fold][c] = solve(svm, cPath[c], store, bounds[fold], bounds[fold + 1]);
+                        } finally {
+                            trainingSets.release(fold);
+                        }
+                        return null;
+                    });
+                }
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks))
+                future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int k = 0; k < kernels.size(); k++)
+            for (int e = 0; e < epsilons.length; e++)
+                for (int c = 0; c < cPath.length; c++) {
+                    double[] accuracies = new double[folds];
+                    double supportVectors = 0, millis = 0;
+                    for (int f = 0; f < folds; f++) {
+                        double[] score = scores[k][e][f][c];
+                        accuracies[f] = score[0];
+                        supportVectors += score[1] / folds;
+                        millis += score[2];
+                    }
+                    results.add(new Result(kernelNames.get(k), epsilons[e], cPath[c], accuracies, supportVectors, millis));
+                }
+        results.sort(Comparator.comparingDouble((Result r) -> -r.accuracy).thenComparingDouble(r -> r.supportVectors));
+        return results;
+    }
+
+    // continues from the alphas of the previous (smaller) C, returns accuracy, support vectors and milliseconds
+    private static double[] solve(SVM svm, double c, TrainingSet store, int from, int to) {
+        long start = System.nanoTime();
+        SMO smo = new SMO(c, new SecondOrderSelection());
+        smo.setShrinking(true);
+        smo.solve(svm);
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        Model model = svm.compile();
+        int correct = 0;
+        for (int i = from; i < to; i++)
+            if (Math.signum(model.output(store.x, i * store.dimension)) == store.y[i])
+                correct++;
+        return new double[] {(double) correct / (to - from), model.getSupportVectorCount(), millis};
+    }
+
+    public static String format(List<Result> results) {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-24s %8s %8s %9s %9s %8s %10s",
+                "Kernel", "Epsilon", "C", "Accuracy", "Error", "SVs", "Train ms"));
+        for (Result result : results)
+            table.append('\n').append(result);
+        return table.toString();
+    }
+
+    private static TrainingSet shuffle(TrainingSet data, Random random) {
+        final int n = data.size, d = data.dimension;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        double[] x = new double[n * d];
+        byte[] y = new byte[n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(data.x, order[i] * d, x, i * d, d);
+            y[i] = data.y[order[i]];
+        }
+        return new TrainingSet(n, d, x, y);
+    }
+
+    // the training sets of the folds, built on first use and dropped once all tasks of a fold are done
+    private static class Folds {
+
+        private final TrainingSet store;
+        private final int[] bounds;
+        private final TrainingSet[] trainingSets;
+        private final int[] users;
+
+        Folds(TrainingSet store, int[] bounds, int usersPerFold) {
+            this.store = store;
+            this.bounds = bounds;
+            this.trainingSets = new TrainingSet[bounds.length - 1];
+            this.users = new int[bounds.length - 1];
+            Arrays.fill(users, usersPerFold);
+        }
+
+        synchronized TrainingSet acquire(int fold) {
+            if (trainingSets[fold] == null)
+                trainingSets[fold] = without(store, bounds[fold], bounds[fold + 1]);
+            return trainingSets[fold];
+        }
+
+        synchronized void release(int fold) {
+            if (--users[fold] == 0)
+                trainingSets[fold] = null;
+        }
+    }
+
+    // all rows except [from, to)
+    private static TrainingSet without(TrainingSet store, int from, int to) {
+        final int d = store.dimension, size = store.size - (to - from);
+        double[] x = new double[size * d];
+        byte[] y = new byte[size];
+        System.arraycopy(store.x, 0, x, 0, from * d);
+        System.arraycopy(store.x, to * d, x, from * d, (store.size - to) * d);
+        System.arraycopy(store.y, 0, y, 0, from);
+        System.arraycopy(store.y, to, y, from, store.size - to);
+        return new TrainingSet(size, d, x, y);
+    }
+}
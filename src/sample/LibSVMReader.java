@@ -0,0 +1,229 @@
+package sample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Streaming parser for the libsvm text format ("label index:value ..."), as
+ * used by the files in data/. Feature indices start at 1 and may be sparse or
+ * unordered. The file is read through a fixed size buffer and numbers are
+ * parsed from the raw bytes, so no String is created per token. forEach
+ * passes the rows on one at a time instead of keeping them, for files that
+ * do not fit into memory.
+ */
+public class LibSVMReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_EXACT_EXPONENT = 22;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_EXPONENT + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private byte[] line = new byte[256];
+    private int lineNumber;
+    private int pos;
+
+    private int size;
+    private int stride; // allocated features per row, at least dimension
+    private int dimension;
+    private double[] x = new double[1024];
+    private int[] y = new int[256];
+    private boolean keepRows = true;
+    private Consumer<FeatureVector> action; // gets each row if they are not kept
+    private int maxDimension = Integer.MAX_VALUE;
+
+    public static DataSet read(Path path) throws IOException {
+        return new LibSVMReader().parse(path);
+    }
+
+    // rows of the given dimension in file order, features beyond it are an error
+    public static void forEach(Path path, int dimension, Consumer<FeatureVector> action) throws IOException {
+        LibSVMReader reader = new LibSVMReader();
+        reader.keepRows = false;
+        reader.action = action;
+        reader.maxDimension = dimension;
+        reader.setStride(Math.max(1, dimension), 0);
+        reader.readLines(path);
+    }
+
+    // the highest feature index in the file, read without keeping any rows
+    public static int dimension(Path path) throws IOException {
+        LibSVMReader reader = new LibSVMReader();
+        reader.keepRows = false;
+        reader.readLines(path);
+        return reader.dimension;
+    }
+
+    private DataSet parse(Path path) throws IOException {
+        this.readLines(path);
+        this.setStride(dimension, size);
+        return new DataSet(size, dimension, Arrays.copyOf(x, size * dimension), Arrays.copyOf(y, size));
+    }
+
+    private void readLines(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            int length = 0;
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        this.parseLine(length);
+                        length = 0;
+                    } else {
+                        if (length == line.length)
+                            line = Arrays.copyOf(line, 2 * length);
+                        line[length++] = b;
+                    }
+                }
+                buffer.clear();
+            }
+            this.parseLine(length);
+        }
+    }
+
+    private void parseLine(int length) throws IOException {
+        lineNumber++;
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+        pos = 0;
+        skipWhitespace(length);
+        if (pos == length || line[pos] == '#')
+            return; // blank line or comment
+
+        if (size == y.length)
+            y = Arrays.copyOf(y, 2 * size);
+        if ((size + 1) * stride > x.length)
+            x = Arrays.copyOf(x, Math.max(2 * x.length, (size + 1) * stride));
+        y[size] = (int) parseNumber(length);
+
+        while (true) {
+            skipWhitespace(length);
+            if (pos == length || line[pos] == '#')
+                break;
+            int start = pos;
+            int index = 0;
+            while (pos < length && line[pos] >= '0' && line[pos] <= '9')
+                index = 10 * index + (line[pos++] - '0');
+            if (pos == start || pos == length || line[pos] != ':' || index < 1)
+                throw this.error("invalid feature index");
+            pos++;
+            double value = parseNumber(length);
+            if (index > maxDimension)
+                throw this.error("feature index " + index + " beyond dimension " + maxDimension);
+            if (index > stride)
+                this.setStride(Math.max(index, 2 * stride), size + 1);
+            if (index > dimension)
+                dimension = index;
+            x[size * stride + index - 1] = value;
+        }
+        if (keepRows) {
+            size++;
+            return;
+        }
+        // the row is passed on and its storage reused
+        if (action != null)
+            action.accept(new FeatureVector(Arrays.copyOf(x, Math.min(stride, maxDimension)), y[0]));
+        Arrays.fill(x, 0, stride, 0);
+    }
+
+    // re-lays out the first rows with a different row stride
+    private void setStride(int newStride, int rows) {
+        if (newStride == stride)
+            return;
+        double[] newX = new double[Math.max(1, rows * newStride)];
+        int copied = Math.min(stride, newStride);
+        for (int i = 0; i < rows; i++)
+            System.arraycopy(x, i * stride, newX, i * newStride, copied);
+        x = newX;
+        stride = newStride;
+    }
+
+    private void skipWhitespace(int length) {
+        while (pos < length && (line[pos] == ' ' || line[pos] == '\t'))
+            pos++;
+    }
+
+    private double parseNumber(int length) throws IOException {
+        final int start = pos;
+        boolean negative = false;
+        if (pos < length && (line[pos] == '-' || line[pos] == '+'))
+            negative = line[pos++] == '-';
+
+        long mantissa = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean seenDigit = false;
+        while (pos < length && line[pos] >= '0' && line[pos] <= '9') {
+            seenDigit = true;
+            if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = 10 * mantissa + (line[pos] - '0');
+            } else {
+                exact = false;
+            }
+            pos++;
+        }
+        if (pos < length && line[pos] == '.') {
+            pos++;
+            while (pos < length && line[pos] >= '0' && line[pos] <= '9') {
+                seenDigit = true;
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = 10 * mantissa + (line[pos] - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+        }
+        if (pos < length && (line[pos] == 'e' || line[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < length && (line[pos] == '-' || line[pos] == '+'))
+                negativeExponent = line[pos++] == '-';
+            int e = 0;
+            boolean seenExponentDigit = false;
+            while (pos < length && line[pos] >= '0' && line[pos] <= '9') {
+                seenExponentDigit = true;
+                if (e < 100000)
+                    e = 10 * e + (line[pos] - '0');
+                pos++;
+            }
+            if (!seenExponentDigit)
+                throw this.error("invalid number");
+            exponent += negativeExponent ? -e : e;
+        }
+        if (pos < length && line[pos] != ' ' && line[pos] != '\t')
+            exact = false; // something unusual like "nan", let the JDK decide
+
+        if (exact && seenDigit && Math.abs(exponent) <= MAX_EXACT_EXPONENT) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        // slow path, only for values that cannot be converted exactly above
+        while (pos < length && line[pos] != ' ' && line[pos] != '\t')
+            pos++;
+        try {
+            return Double.parseDouble(new String(line, start, pos - start, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            throw this.error("invalid number");
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " in line " + lineNumber);
+    }
+}
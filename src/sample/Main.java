@@ -2,7 +2,12 @@ package sample;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import javax.swing.border.*;
 
@@ -10,17 +15,23 @@ import org.jfree.chart.*;
 import org.jfree.chart.plot.*;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.*;
+import org.jfree.ui.Align;
 
 import sample.kernels.*;
 import sample.solvers.*;
 
 public class Main implements ActionListener {
 
+    private static final long SNAPSHOT_NANOS = 500000000L; // chart refresh interval while training
+    private static final int SURFACE_WIDTH = 640;
+    private static final int SURFACE_HEIGHT = 512;
+
     private JFrame frame;
     private JPanel configPanel;
     private JPanel mainPanel;
     private JComboBox dataSetSelector;
-    private JCheckBox kernelToggle;
+    private JComboBox<String> kernelSelector;
+    private SpinnerModel gammaModel;
     private SpinnerModel epsilonModel;
 
     private SpinnerModel smoCModel;
@@ -29,8 +40,15 @@ public class Main implements ActionListener {
     private SpinnerModel eszIterationsModel;
     private SpinnerModel eszDeltaModel;
     private JButton eszRunButton;
+    private JButton cancelButton;
+
+    private SwingWorker<SVM, Snapshot> training;
+    private Solver runningSolver;
+    private SwingWorker<Void, BufferedImage> surfaceRenderer;
 
+    private String[] kernels = {"Dot product", "Polynomial", "RBF", "Sigmoid"};
     private String[] dataSets = {"trivial1","trivial2","separatable","circular","real1","real2","real3"};
+    private final Map<String, List<FeatureVector>> loadedDataSets = new HashMap<>(); // null if there is no file
     private JLabel reliabilityLabel;
     private JCheckBox reliabilityToggle;
 
@@ -57,8 +75,11 @@ public class Main implements ActionListener {
         dataSetSelector.addActionListener(this);
         configPanel.add(dataSetSelector);
 
-        kernelToggle = new JCheckBox("Use polynomial kernel");
-        configPanel.add(kernelToggle);
+        configPanel.add(new JLabel("Kernel:"));
+        kernelSelector = new JComboBox<>(kernels);
+        configPanel.add(kernelSelector);
+        gammaModel = new SpinnerNumberModel(-3, -10, 2, 1);
+        this.addSpinner("Gamma Exp. (RBF, Sigmoid)", gammaModel);
 
         reliabilityToggle = new JCheckBox("Calculate reliability");
         configPanel.add(reliabilityToggle);
@@ -79,6 +100,9 @@ public class Main implements ActionListener {
         this.addSpinner("Delta Exp.", eszDeltaModel);
         eszRunButton = new JButton("Run ESZ");
         this.addSolverButton(eszRunButton);
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        this.addSolverButton(cancelButton);
 
         this.addSolverHeader("Reliability");
         reliabilityLabel = new JLabel("no testdata for this dataset");
@@ -86,7 +110,7 @@ public class Main implements ActionListener {
 
         mainPanel = new JPanel();
         mainPanel.setPreferredSize(new Dimension(700,600));
-        this.updateChart(null);
+        this.updateChart(this.read((String) dataSetSelector.getSelectedItem()), null, false);
 
         splitPanel.add(configPanel, BorderLayout.WEST);
         splitPanel.add(mainPanel, BorderLayout.EAST);
@@ -118,30 +142,129 @@ public class Main implements ActionListener {
 
     @Override
     public void actionPerformed(ActionEvent e) {
+        if (e.getSource() == cancelButton) {
+            // the running solve stops and its best solution is shown when the worker is done
+            runningSolver.cancel();
+            cancelButton.setEnabled(false);
+            return;
+        }
         Solver solver = null;
         if (e.getSource() == smoRunButton) {
             double c = (int) smoCModel.getValue();
-            solver = new SMO(c);
+            SMO smo = new SMO(c);
+            smo.setDebugPrint(true);
+            solver = smo;
         } else if (e.getSource() == eszRunButton) {
             int iterations = 1000000 * (int) eszIterationsModel.getValue();
             int deltaExponent = (int) eszDeltaModel.getValue();
             double delta = Math.pow(10, deltaExponent);
             solver = new ESZ(iterations, delta);
         }
-        this.updateChart(solver);
-        SwingUtilities.updateComponentTreeUI(frame);
+        this.abandonTraining();
+        List<FeatureVector> trainingVectors = this.read((String) dataSetSelector.getSelectedItem());
+        if (solver == null)
+            this.updateChart(trainingVectors, null, false);
+        else
+            this.startTraining(trainingVectors, solver);
     }
 
-    private void updateChart(Solver solver) {
-        String dataSet = (String) dataSetSelector.getSelectedItem();
-        List<FeatureVector> trainingVectors = CSVImporter.read(dataSet);
-        SVM svm = this.calculateSVM(trainingVectors, solver);
+    // progress of a running solve, handed from the worker to the event dispatch thread
+    private static class Snapshot {
+        final String status;
+        final SVM svm;
+
+        Snapshot(String status, SVM svm) {
+            this.status = status;
+            this.svm = svm;
+        }
+    }
+
+    private void startTraining(List<FeatureVector> trainingVectors, Solver solver) {
+        final SVM svm = this.createSVM(trainingVectors);
+        final String name = solver instanceof ESZ ? "ESZ" : "SMO";
+        training = new SwingWorker<SVM, Snapshot>() {
+            private long lastSnapshot = System.nanoTime();
+
+            @Override
+            protected SVM doInBackground() {
+                // called on this worker thread between steps, while svm.alphas are consistent
+                solver.setProgressListener((round, violations, score) -> {
+                    long now = System.nanoTime();
+                    if (now - lastSnapshot < SNAPSHOT_NANOS)
+                        return;
+                    lastSnapshot = now;
+                    String status = name + " round " + round;
+                    if (violations >= 0)
+                        status += ", " + violations + " violations";
+                    if (!Double.isNaN(score))
+                        status += String.format(Locale.ROOT, ", objective %.6g", score);
+                    publish(new Snapshot(status, snapshot(svm)));
+                });
+                solver.solve(svm);
+                return svm;
+            }
+
+            @Override
+            protected void process(List<Snapshot> snapshots) {
+                if (training != this)
+                    return;
+                Snapshot latest = snapshots.get(snapshots.size() - 1);
+                frame.setTitle(latest.status);
+                updateChart(trainingVectors, latest.svm, false);
+            }
+
+            @Override
+            protected void done() {
+                if (training != this)
+                    return;
+                training = null;
+                setRunning(false);
+                try {
+                    updateChart(trainingVectors, this.get(), true);
+                    frame.setTitle(name + " finished");
+                } catch (InterruptedException | ExecutionException e) {
+                    frame.setTitle(name + " failed: " + e.getCause());
+                }
+            }
+        };
+        runningSolver = solver;
+        this.setRunning(true);
+        frame.setTitle(name + " running");
+        training.execute();
+    }
+
+    // stops a running solve without showing its result
+    private void abandonTraining() {
+        if (training == null)
+            return;
+        runningSolver.cancel();
+        training = null;
+        this.setRunning(false);
+        frame.setTitle("");
+    }
 
-        List<FeatureVector> testVectors = CSVImporter.read(dataSet + "-t");
+    private void setRunning(boolean running) {
+        smoRunButton.setEnabled(!running);
+        eszRunButton.setEnabled(!running);
+        cancelButton.setEnabled(running);
+    }
+
+    // copy of the current solution with its own threshold, the solver keeps changing svm
+    private static SVM snapshot(SVM svm) {
+        SVM snapshot = new SVM(svm.data, svm.kernel, svm.epsilon);
+        System.arraycopy(svm.alphas, 0, snapshot.alphas, 0, svm.alphas.length);
+        snapshot.setKernelMatrix(svm.getKernelMatrix()); // read-only, computed once per training
+        snapshot.updateB();
+        return snapshot;
+    }
+
+    private void updateChart(List<FeatureVector> trainingVectors, SVM svm, boolean finished) {
+        String dataSet = (String) dataSetSelector.getSelectedItem();
+        List<FeatureVector> testVectors = this.read(dataSet + "-t");
         if (testVectors != null) {
             reliabilityToggle.setEnabled(true);
 
-            if (solver == null || !reliabilityToggle.isSelected()) {
+            if (!finished || !reliabilityToggle.isSelected()) {
                 reliabilityLabel.setText("Check 'Calc reliability' and run");
             } else
                 reliabilityLabel.setText((Math.round(svm.assessAccuracy(testVectors) * 10000.0) / 100.0) + " %");
@@ -155,26 +278,27 @@ public class Main implements ActionListener {
         chartPanel.setPreferredSize(new Dimension(700,570));
         mainPanel.removeAll();
         mainPanel.add(chartPanel);
+        SwingUtilities.updateComponentTreeUI(frame);
     }
 
-    private SVM calculateSVM(List<FeatureVector> trainingVectors, Solver solver) {
-
-        if (solver == null) {
-            return null;
-        }
+    // parsed once per data set, every chart update and snapshot needs the training and test vectors
+    private List<FeatureVector> read(String dataSet) {
+        if (!loadedDataSets.containsKey(dataSet))
+            loadedDataSets.put(dataSet, CSVImporter.read(dataSet));
+        return loadedDataSets.get(dataSet);
+    }
 
-        SVM svm = new SVM();
-        svm.vectors = trainingVectors;
-        if (kernelToggle.isSelected()) {
-            svm.kernel = new PolynomialKernel();
-        } else {
-            svm.kernel = new DotProductKernel();
+    private SVM createSVM(List<FeatureVector> trainingVectors) {
+        double gamma = Math.pow(10, (int) gammaModel.getValue());
+        Kernel kernel;
+        switch (kernelSelector.getSelectedIndex()) {
+            case 1: kernel = new PolynomialKernel(); break;
+            case 2: kernel = new RBFKernel(gamma); break;
+            case 3: kernel = new SigmoidKernel(gamma, 0); break;
+            default: kernel = new DotProductKernel();
         }
         int epsilonExponent = (int) epsilonModel.getValue();
-        svm.epsilon = Math.pow(10, epsilonExponent);
-        solver.solve(svm);
-        svm.updateB();
-        return svm;
+        return new SVM(TrainingSet.of(trainingVectors), kernel, Math.pow(10, epsilonExponent));
     }
 
     private JFreeChart createChart(List<FeatureVector> vectors, SVM svm) {
@@ -185,10 +309,6 @@ public class Main implements ActionListener {
         dataset.addSeries(class1points);
         XYSeries class2points = pointSeries(vectors, -1,"Class2Points");
         dataset.addSeries(class2points);
-        if (svm != null) {
-            XYSeries hyperplane = areaSeries(svm, "Hyperplane");
-            dataset.addSeries(hyperplane);
-        }
 
         JFreeChart chart = ChartFactory.createXYLineChart("Chart", "",
                 "", dataset, PlotOrientation.VERTICAL, false, false, false);
@@ -204,51 +324,71 @@ public class Main implements ActionListener {
         renderer.setSeriesShapesVisible(1, true);
         renderer.setSeriesPaint(1, Color.blue);
 
-        renderer.setSeriesLinesVisible(2, false);
-        renderer.setSeriesShapesVisible(2, true);
-        renderer.setSeriesPaint(2, Color.yellow);
-
         plot.setRenderer(renderer);
 
+        if (surfaceRenderer != null)
+            surfaceRenderer.cancel(false);
+        if (svm != null) {
+            DecisionSurface surface = decisionSurface(svm);
+            plot.getDomainAxis().setRange(surface.xMin, surface.xMax);
+            plot.getRangeAxis().setRange(surface.yMin, surface.yMax);
+            plot.setBackgroundImageAlignment(Align.FIT);
+            this.renderSurface(plot, surface);
+        }
+
         return chart;
     }
 
-    private XYSeries areaSeries(SVM svm, String key) {
-        XYSeries series = new XYSeries(key);
+    // draws a coarse surface right away, then refines it in the background
+    private void renderSurface(XYPlot plot, DecisionSurface surface) {
+        plot.setBackgroundImage(surface.render(SURFACE_WIDTH / 8, SURFACE_HEIGHT / 8));
+        surfaceRenderer = new SwingWorker<Void, BufferedImage>() {
+            @Override
+            protected Void doInBackground() {
+                for (int step = 4; step >= 1 && !this.isCancelled(); step /= 2)
+                    publish(surface.render(SURFACE_WIDTH / step, SURFACE_HEIGHT / step));
+                return null;
+            }
+
+            @Override
+            protected void process(List<BufferedImage> images) {
+                if (!this.isCancelled())
+                    plot.setBackgroundImage(images.get(images.size() - 1));
+            }
+        };
+        surfaceRenderer.execute();
+    }
 
+    private DecisionSurface decisionSurface(SVM svm) {
         double xMin = 0.0;
         double xMax = 0.0;
         double yMin = 0.0;
         double yMax = 0.0;
 
-        for (FeatureVector v : svm.vectors) {
-            if (v.x[0] > xMax) {
-                xMax = v.x[0];
+        TrainingSet data = svm.data;
+        for (int i = 0; i < data.size; i++) {
+            if (data.get(i, 0) > xMax) {
+                xMax = data.get(i, 0);
             }
-            if (v.x[1] > yMax) {
-                yMax = v.x[1];
+            if (data.get(i, 1) > yMax) {
+                yMax = data.get(i, 1);
             }
-            if (v.x[0] < xMin) {
-                xMin = v.x[0];
+            if (data.get(i, 0) < xMin) {
+                xMin = data.get(i, 0);
             }
-            if (v.x[1] < yMin) {
-                yMin = v.x[1];
+            if (data.get(i, 1) < yMin) {
+                yMin = data.get(i, 1);
             }
         }
 
-        double stepX = (xMax - xMin) / 100.0;
-        double stepY = (yMax - yMin) / 100.0;
+        // features beyond the plotted two are fixed at their training mean
+        final int d = data.dimension;
+        double[] mean = new double[d];
+        for (int i = 0; i < data.size; i++)
+            for (int k = 2; k < d; k++)
+                mean[k] += data.get(i, k) / data.size;
 
-        for(double x = xMin-3; x < xMax+3; x+=stepX) {
-            for(double y = yMin-3; y < yMax+3; y+=stepY) {
-                double classification = svm.output(new double[] {x, y});
-
-                if (classification <= 0)
-                    series.add(x, y);
-            }
-        }
-
-        return series;
+        return new DecisionSurface(svm.compile(), xMin-3, xMax+3, yMin-3, yMax+3, mean);
     }
 
     private XYSeries pointSeries(List<FeatureVector> vectors, int y, String key) {
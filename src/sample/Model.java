@@ -0,0 +1,165 @@
+package sample;
+
+import sample.kernels.DotProductKernel;
+import sample.kernels.Kernel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Snapshot of a trained SVM for prediction. The support vectors are copied
+ * into one flat array together with their alpha*y coefficients, so scoring
+ * does not allocate. For the linear kernel the weight vector w is formed
+ * once and a prediction costs a single dot product.
+ */
+public class Model {
+
+    final Kernel kernel;
+    final int dimension;
+    final double[] coefficients; // alpha * y per support vector
+    final double[] supportVectors; // row-major, one row per support vector
+    private final double[] w; // only for the linear kernel, otherwise null
+    private final double[] squaredNorms; // of the support vectors, only without w
+    final double b;
+
+    public Model(Kernel kernel, int dimension, double[] coefficients, double[] supportVectors, double b) {
+        this.kernel = kernel;
+        this.dimension = dimension;
+        this.coefficients = coefficients;
+        this.supportVectors = supportVectors;
+        this.b = b;
+
+        if (kernel instanceof DotProductKernel) {
+            w = new double[dimension];
+            for (int i = 0; i < coefficients.length; i++) {
+                final int offset = i * dimension;
+                for (int k = 0; k < dimension; k++)
+                    w[k] += coefficients[i] * supportVectors[offset + k];
+            }
+            squaredNorms = null;
+        } else {
+            w = null;
+            squaredNorms = Kernel.squaredNorms(supportVectors, dimension);
+        }
+    }
+
+    public static Model of(SVM svm) {
+        final TrainingSet data = svm.data;
+        final int dimension = data.dimension;
+        int[] indices = svm.getSupportVectors();
+        double[] coefficients = new double[indices.length];
+        double[] supportVectors = new double[indices.length * dimension];
+        for (int i = 0; i < indices.length; i++) {
+            coefficients[i] = svm.alphas[indices[i]] * data.y[indices[i]];
+            System.arraycopy(data.x, indices[i] * dimension, supportVectors, i * dimension, dimension);
+        }
+        return new Model(svm.kernel, dimension, coefficients, supportVectors, svm.b);
+    }
+
+    public double output(double[] x) {
+        return this.output(x, 0);
+    }
+
+    // scores the row starting at offset in a flat (row-major) array
+    public double output(double[] data, int offset) {
+        double u = b;
+        if (w != null) {
+            for (int k = 0; k < dimension; k++)
+                u += w[k] * data[offset + k];
+            return u;
+        }
+        for (int i = 0; i < coefficients.length; i++)
+            u += coefficients[i] * kernel.apply(supportVectors, i * dimension, data, offset, dimension);
+        return u;
+    }
+
+    public double[] batchOutput(double[][] rows) {
+        double[] outputs = new double[rows.length];
+        this.score(new ScoringTask(rows, null, outputs, 0, rows.length));
+        return outputs;
+    }
+
+    // scores all rows of a flat (row-major) array with getDimension() columns
+    public double[] batchOutput(double[] data) {
+        final int count = dimension == 0 ? 0 : data.length / dimension;
+        double[] outputs = new double[count];
+        this.score(new ScoringTask(null, data, outputs, 0, count));
+        return outputs;
+    }
+
+    private void score(ScoringTask task) {
+        if (task.to - task.from <= this.grainSize())
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+    }
+
+    // number of rows worth scoring in one task, about 64k multiply-adds
+    private int grainSize() {
+        long costPerRow = w != null ? dimension : (long) coefficients.length * dimension;
+        return (int) Math.max(64, 65536 / Math.max(1, costPerRow));
+    }
+
+    @SuppressWarnings("serial") // Serializable through ForkJoinTask, but never serialized
+    private class ScoringTask extends RecursiveAction {
+
+        final double[][] rows;
+        final double[] data;
+        final double[] outputs;
+        final int from, to;
+
+        ScoringTask(double[][] rows, double[] data, double[] outputs, int from, int to) {
+            this.rows = rows;
+            this.data = data;
+            this.outputs = outputs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grainSize()) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoringTask(rows, data, outputs, from, mid),
+                        new ScoringTask(rows, data, outputs, mid, to));
+                return;
+            }
+            // with a kernel, each row is scored against all support vectors in one Kernel.applyRow
+            final double[] kernelRow = w == null ? new double[coefficients.length] : null;
+            for (int i = from; i < to; i++) {
+                final double[] x = rows != null ? rows[i] : data;
+                final int offset = rows != null ? 0 : i * dimension;
+                outputs[i] = kernelRow == null ? output(x, offset) : output(x, offset, kernelRow);
+            }
+        }
+    }
+
+    private double output(double[] x, int offset, double[] kernelRow) {
+        kernel.applyRow(x, offset, Kernel.squaredNorm(x, offset, dimension), supportVectors, dimension,
+                squaredNorms, kernelRow);
+        double u = b;
+        for (int i = 0; i < coefficients.length; i++)
+            u += coefficients[i] * kernelRow[i];
+        return u;
+    }
+
+    public int classify(double[] x) {
+        return this.output(x) > 0 ? 1 : -1;
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getSupportVectorCount() {
+        return coefficients.length;
+    }
+
+    public double getB() {
+        return b;
+    }
+}
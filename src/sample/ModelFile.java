@@ -0,0 +1,107 @@
+package sample;
+
+import sample.kernels.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file of a compiled Model, so predictions do not need the training
+ * set or a new training run. The file consists of
+ *
+ *   header       magic, version, kernel, dimension, count, degree (int32),
+ *                gamma, coef0, b (float64)
+ *   coefficients count * float64 (alpha * y)
+ *   vectors      count * dimension * float64, row-major
+ *
+ * all little endian. Reading maps the file and copies both blocks with one
+ * bulk get each, there is nothing to parse.
+ */
+public class ModelFile {
+
+    public static final int MAGIC = 0x53564d4d; // "SVMM"
+    public static final int VERSION = 1;
+
+    public static final int DOT_PRODUCT = 0;
+    public static final int POLYNOMIAL = 1;
+    public static final int RBF = 2;
+    public static final int SIGMOID = 3;
+
+    private static final int HEADER_SIZE = 48;
+
+    public static void write(Model model, Path path) throws IOException {
+        final int count = model.coefficients.length, dimension = model.dimension;
+        int type, degree = 0;
+        double gamma = 0, coef0 = 0;
+        Kernel kernel = model.kernel;
+        if (kernel instanceof DotProductKernel) {
+            type = DOT_PRODUCT;
+        } else if (kernel instanceof PolynomialKernel) {
+            type = POLYNOMIAL;
+            gamma = ((PolynomialKernel) kernel).getGamma();
+            coef0 = ((PolynomialKernel) kernel).getCoef0();
+            degree = ((PolynomialKernel) kernel).getDegree();
+        } else if (kernel instanceof RBFKernel) {
+            type = RBF;
+            gamma = ((RBFKernel) kernel).getGamma();
+        } else if (kernel instanceof SigmoidKernel) {
+            type = SIGMOID;
+            gamma = ((SigmoidKernel) kernel).getGamma();
+            coef0 = ((SigmoidKernel) kernel).getCoef0();
+        } else {
+            throw new IOException("cannot store kernel " + kernel.getClass().getName());
+        }
+
+        final long length = HEADER_SIZE + 8L * count + 8L * count * dimension;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, length);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(type).putInt(dimension).putInt(count).putInt(degree)
+                    .putDouble(gamma).putDouble(coef0).putDouble(model.b);
+            buffer.asDoubleBuffer().put(model.coefficients).put(model.supportVectors);
+        }
+    }
+
+    public static Model read(Path path) throws IOException {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException("not a model file");
+            ByteBuffer buffer = map(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException("not a model file");
+            final int type = buffer.getInt();
+            final int dimension = buffer.getInt();
+            final int count = buffer.getInt();
+            final int degree = buffer.getInt();
+            final double gamma = buffer.getDouble();
+            final double coef0 = buffer.getDouble();
+            final double b = buffer.getDouble();
+            if (channel.size() != HEADER_SIZE + 8L * count + 8L * count * dimension)
+                throw new IOException("model file is truncated");
+
+            Kernel kernel;
+            switch (type) {
+                case DOT_PRODUCT: kernel = new DotProductKernel(); break;
+                case POLYNOMIAL: kernel = new PolynomialKernel(gamma, coef0, degree); break;
+                case RBF: kernel = new RBFKernel(gamma); break;
+                case SIGMOID: kernel = new SigmoidKernel(gamma, coef0); break;
+                default: throw new IOException("unknown kernel " + type);
+            }
+            double[] coefficients = new double[count];
+            double[] supportVectors = new double[count * dimension];
+            buffer.asDoubleBuffer().get(coefficients).get(supportVectors);
+            return new Model(kernel, dimension, coefficients, supportVectors, b);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("model of " + length + " bytes is too large to map");
+        return channel.map(mode, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
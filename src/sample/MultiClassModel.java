@@ -0,0 +1,122 @@
+package sample;
+
+import sample.kernels.Kernel;
+
+import java.util.Arrays;
+
+/**
+ * Multi-class prediction from binary subproblems, one-vs-one (majority vote)
+ * or one-vs-rest (largest decision value). The support vectors of all
+ * subproblems are stored once, so a query evaluates the kernel once per
+ * unique support vector and every binary decision only sums coefficients.
+ */
+public class MultiClassModel {
+
+    public enum Strategy { ONE_VS_ONE, ONE_VS_REST }
+
+    private final Strategy strategy;
+    private final Kernel kernel;
+    private final int dimension;
+    private final int[] classes; // label of each class index
+    private final double[] supportVectors; // unique ones, row-major
+    private final double[] squaredNorms; // of the support vectors
+    // per binary subproblem: the classes it separates (negative is -1 for the rest),
+    // indices into supportVectors, their alpha * y and the threshold
+    private final int[] positive;
+    private final int[] negative;
+    private final int[][] indices;
+    private final double[][] coefficients;
+    private final double[] b;
+
+    MultiClassModel(Strategy strategy, Kernel kernel, int dimension, int[] classes, double[] supportVectors,
+                    int[] positive, int[] negative, int[][] indices, double[][] coefficients, double[] b) {
+        this.strategy = strategy;
+        this.kernel = kernel;
+        this.dimension = dimension;
+        this.classes = classes;
+        this.supportVectors = supportVectors;
+        this.squaredNorms = Kernel.squaredNorms(supportVectors, dimension);
+        this.positive = positive;
+        this.negative = negative;
+        this.indices = indices;
+        this.coefficients = coefficients;
+        this.b = b;
+    }
+
+    public int predict(double[] x) {
+        return this.predict(x, 0, new double[this.getSupportVectorCount()], new int[classes.length]);
+    }
+
+    // predicts every row of a flat (row-major) array with getDimension() columns
+    public int[] batchPredict(double[] data) {
+        final int count = dimension == 0 ? 0 : data.length / dimension;
+        int[] labels = new int[count];
+        double[] kernelRow = new double[this.getSupportVectorCount()];
+        int[] votes = new int[classes.length];
+        for (int i = 0; i < count; i++)
+            labels[i] = this.predict(data, i * dimension, kernelRow, votes);
+        return labels;
+    }
+
+    public double assessAccuracy(DataSet testSet) {
+        int[] labels = this.batchPredict(testSet.x);
+        int correct = 0;
+        for (int i = 0; i < testSet.size; i++)
+            if (labels[i] == testSet.y[i])
+                correct++;
+        return correct * 1.0 / testSet.size;
+    }
+
+    private int predict(double[] data, int offset, double[] kernelRow, int[] votes) {
+        kernel.applyRow(data, offset, Kernel.squaredNorm(data, offset, dimension), supportVectors, dimension,
+                squaredNorms, kernelRow);
+        int best = 0;
+        if (strategy == Strategy.ONE_VS_REST) {
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int p = 0; p < b.length; p++) {
+                final double value = this.decision(p, kernelRow);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = positive[p];
+                }
+            }
+            return classes[best];
+        }
+        Arrays.fill(votes, 0);
+        for (int p = 0; p < b.length; p++)
+            votes[this.decision(p, kernelRow) > 0 ? positive[p] : negative[p]]++;
+        for (int c = 1; c < votes.length; c++)
+            if (votes[c] > votes[best])
+                best = c;
+        return classes[best];
+    }
+
+    private double decision(int problem, double[] kernelRow) {
+        final int[] problemIndices = indices[problem];
+        final double[] problemCoefficients = coefficients[problem];
+        double u = b[problem];
+        for (int k = 0; k < problemIndices.length; k++)
+            u += problemCoefficients[k] * kernelRow[problemIndices[k]];
+        return u;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int[] getClasses() {
+        return classes.clone();
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getSupportVectorCount() {
+        return dimension == 0 ? 0 : supportVectors.length / dimension;
+    }
+
+    public int getProblemCount() {
+        return b.length;
+    }
+}
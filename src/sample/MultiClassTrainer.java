@@ -0,0 +1,178 @@
+package sample;
+
+import sample.kernels.Kernel;
+import sample.kernels.KernelMatrix;
+import sample.solvers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Trains a MultiClassModel on the raw labels of a data set by splitting it
+ * into binary subproblems that are solved in parallel on a fixed thread pool.
+ * One-vs-rest subproblems all use the features of the data set itself and,
+ * if its packed kernel matrix fits into the cache size, share one read-only
+ * KernelMatrix. One-vs-one subproblems copy the rows of their two classes and
+ * get a kernel cache each from their share of the cache size.
+ */
+public class MultiClassTrainer {
+
+    public MultiClassModel.Strategy strategy = MultiClassModel.Strategy.ONE_VS_ONE;
+    public double c = 1;
+    public double epsilon = 1e-5;
+    public Supplier<Solver> solver; // one per subproblem, SMO with WSS2 and shrinking if null
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public int cacheSize = 400; // MB for all subproblems together
+
+    // a binary subproblem, rows maps its rows to the data set (null for all rows)
+    private static class Problem {
+        final int positive, negative;
+        final TrainingSet data;
+        final int[] rows;
+
+        Problem(int positive, int negative, TrainingSet data, int[] rows) {
+            this.positive = positive;
+            this.negative = negative;
+            this.data = data;
+            this.rows = rows;
+        }
+    }
+
+    public MultiClassModel train(DataSet dataSet, Supplier<Kernel> kernel) {
+        final int n = dataSet.size, d = dataSet.dimension;
+        final int[] classes = Arrays.stream(dataSet.y, 0, n).distinct().sorted().toArray();
+        if (classes.length < 2)
+            throw new IllegalArgumentException("need at least two classes, found " + classes.length);
+        final int k = classes.length;
+        final int[] classOf = new int[n];
+        for (int i = 0; i < n; i++)
+            classOf[i] = Arrays.binarySearch(classes, dataSet.y[i]);
+
+        List<Problem> problems = strategy == MultiClassModel.Strategy.ONE_VS_REST
+                ? oneVsRest(dataSet, classOf, k) : oneVsOne(dataSet, classOf, k);
+        final int concurrency = Math.max(1, Math.min(threads, problems.size()));
+        KernelMatrix shared = null;
+        if (strategy == MultiClassModel.Strategy.ONE_VS_REST && KernelMatrix.bytes(n, false) <= (long) cacheSize * 1024 * 1024)
+            shared = KernelMatrix.compute(kernel.get(), dataSet.x, d, false, false);
+        final KernelMatrix sharedMatrix = shared;
+        final int cacheSizePerProblem = Math.max(1, cacheSize / concurrency);
+
+        List<Callable<SVM>> tasks = new ArrayList<>();
+        for (Problem problem : problems) {
+            tasks.add(() -> {
+                SVM svm = new SVM(problem.data, sharedMatrix != null ? sharedMatrix.getKernel() : kernel.get(), epsilon);
+                svm.cacheSize = cacheSizePerProblem;
+                svm.matrixSize = 0; // the row cache suits WSS2 better than a matrix per subproblem
+                if (sharedMatrix != null)
+                    svm.setKernelMatrix(sharedMatrix);
+                this.createSolver().solve(svm);
+                return svm;
+            });
+        }
+        List<SVM> svms = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (Future<SVM> future : pool.invokeAll(tasks))
+                svms.add(future.get());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return this.assemble(dataSet, kernel.get(), classes, problems, svms);
+    }
+
+    private Solver createSolver() {
+        if (solver != null)
+            return solver.get();
+        SMO smo = new SMO(c, new SecondOrderSelection());
+        smo.setShrinking(true);
+        return smo;
+    }
+
+    private static List<Problem> oneVsRest(DataSet dataSet, int[] classOf, int k) {
+        List<Problem> problems = new ArrayList<>();
+        for (int c = 0; c < k; c++) {
+            byte[] y = new byte[dataSet.size];
+            for (int i = 0; i < dataSet.size; i++)
+                y[i] = (byte) (classOf[i] == c ? 1 : -1);
+            problems.add(new Problem(c, -1, new TrainingSet(dataSet.size, dataSet.dimension, dataSet.x, y), null));
+        }
+        return problems;
+    }
+
+    private static List<Problem> oneVsOne(DataSet dataSet, int[] classOf, int k) {
+        final int d = dataSet.dimension;
+        int[][] members = new int[k][];
+        int[] counts = new int[k];
+        for (int c : classOf)
+            counts[c]++;
+        for (int c = 0; c < k; c++)
+            members[c] = new int[counts[c]];
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < dataSet.size; i++)
+            members[classOf[i]][counts[classOf[i]]++] = i;
+
+        List<Problem> problems = new ArrayList<>();
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                final int size = members[a].length + members[b].length;
+                int[] rows = new int[size];
+                System.arraycopy(members[a], 0, rows, 0, members[a].length);
+                System.arraycopy(members[b], 0, rows, members[a].length, members[b].length);
+                double[] x = new double[size * d];
+                byte[] y = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    System.arraycopy(dataSet.x, rows[i] * d, x, i * d, d);
+                    y[i] = (byte) (i < members[a].length ? 1 : -1);
+                }
+                problems.add(new Problem(a, b, new TrainingSet(size, d, x, y), rows));
+            }
+        }
+        return problems;
+    }
+
+    // collects the support vectors of all subproblems, each training row at most once
+    private MultiClassModel assemble(DataSet dataSet, Kernel kernel, int[] classes, List<Problem> problems, List<SVM> svms) {
+        final int d = dataSet.dimension;
+        final int p = problems.size();
+        int[] unique = new int[dataSet.size];
+        Arrays.fill(unique, -1);
+        int count = 0;
+        double[] supportVectors = new double[0];
+        int[] positive = new int[p], negative = new int[p];
+        int[][] indices = new int[p][];
+        double[][] coefficients = new double[p][];
+        double[] b = new double[p];
+        for (int q = 0; q < p; q++) {
+            Problem problem = problems.get(q);
+            SVM svm = svms.get(q);
+            int[] local = svm.getSupportVectors();
+            positive[q] = problem.positive;
+            negative[q] = problem.negative;
+            indices[q] = new int[local.length];
+            coefficients[q] = new double[local.length];
+            b[q] = svm.b;
+            for (int s = 0; s < local.length; s++) {
+                final int row = problem.rows == null ? local[s] : problem.rows[local[s]];
+                if (unique[row] < 0) {
+                    if ((count + 1) * d > supportVectors.length)
+                        supportVectors = Arrays.copyOf(supportVectors, Math.max(16 * d, 2 * supportVectors.length));
+                    System.arraycopy(dataSet.x, row * d, supportVectors, count * d, d);
+                    unique[row] = count++;
+                }
+                indices[q][s] = unique[row];
+                coefficients[q][s] = svm.alphas[local[s]] * svm.data.y[local[s]];
+            }
+        }
+        return new MultiClassModel(strategy, kernel, d, classes, Arrays.copyOf(supportVectors, count * d),
+                positive, negative, indices, coefficients, b);
+    }
+}
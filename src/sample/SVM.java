@@ -1,68 +1,222 @@
 package sample;
 
 import sample.kernels.Kernel;
+import sample.kernels.KernelCache;
+import sample.kernels.KernelMatrix;
 
-import java.util.ArrayList;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SVM {
 
-    public List<FeatureVector> vectors;
+    public TrainingSet data;
+    public double[] alphas;
     public Kernel kernel;
     public double epsilon;
     public double b = 0;
+    public int cacheSize = 100; // MB
+    // the whole kernel matrix is precomputed if its upper triangle fits into matrixSize, 0 disables it.
+    // The row cache then holds no rows of its own, so callers splitting a budget may charge the
+    // matrix against their cacheSize share.
+    public int matrixSize = 0; // MB
+    public boolean singlePrecision = false; // store the matrix as floats
+    public boolean offHeap = false; // store the matrix in a direct buffer
 
-    public List<FeatureVector> getSupportVectors() {
-        List<FeatureVector> featureVectors = new ArrayList<>();
-        for (FeatureVector v: vectors) {
-            if (v.alpha > epsilon)
-                featureVectors.add(v);
+    private KernelCache kernelCache;
+    private TrainingSet kernelCacheData;
+    private long evaluations; // by replaced caches and by matrices computed here
+    private KernelMatrix kernelMatrix;
+    private Kernel kernelMatrixKernel;
+    private TrainingSet kernelMatrixData;
+
+    public SVM() {
+    }
+
+    public SVM(TrainingSet data, Kernel kernel, double epsilon) {
+        this.data = data;
+        this.alphas = new double[data.size];
+        this.kernel = kernel;
+        this.epsilon = epsilon;
+    }
+
+    public KernelCache getKernelCache() {
+        if (kernelCache == null || kernelCache.getKernel() != kernel || kernelCacheData != data) {
+            KernelMatrix matrix = this.getKernelMatrix();
+            if (kernelCache != null)
+                evaluations += kernelCache.getEvaluations();
+            kernelCache = matrix != null
+                    ? new KernelCache(matrix, data.x, data.dimension, cacheSize)
+                    : new KernelCache(kernel, data.x, data.dimension, cacheSize);
+            kernelCacheData = data;
         }
-        return featureVectors;
+        return kernelCache;
+    }
+
+    // the precomputed kernel matrix for the current kernel and data, null if it exceeds matrixSize
+    public KernelMatrix getKernelMatrix() {
+        return this.getKernelMatrix(matrixSize);
+    }
+
+    // same with another budget, e.g. cacheSize for a solver that has no use for a row cache
+    public KernelMatrix getKernelMatrix(int sizeMB) {
+        final boolean fits = KernelMatrix.bytes(data.size, singlePrecision) <= (long) sizeMB * 1024 * 1024;
+        if (kernelMatrixKernel != kernel || kernelMatrixData != data || (kernelMatrix == null && fits)) {
+            kernelMatrix = null; // may be large, release it before computing the next one
+            if (fits) {
+                kernelMatrix = KernelMatrix.compute(kernel, data.x, data.dimension, singlePrecision, offHeap);
+                evaluations += KernelMatrix.entries(data.size);
+            }
+            kernelMatrixKernel = kernel;
+            kernelMatrixData = data;
+        }
+        return kernelMatrix;
+    }
+
+    // kernel evaluations so far, including the entries of a matrix computed by this SVM
+    public long getKernelEvaluations() {
+        return evaluations + (kernelCache != null ? kernelCache.getEvaluations() : 0);
+    }
+
+    // uses the given matrix for the current kernel and data, e.g. one shared with other SVMs on the same features
+    public void setKernelMatrix(KernelMatrix kernelMatrix) {
+        this.kernelMatrix = kernelMatrix;
+        this.kernelMatrixKernel = kernel;
+        this.kernelMatrixData = data;
+    }
+
+    public int[] getSupportVectors() {
+        int count = 0;
+        for (double alpha : alphas)
+            if (alpha > epsilon)
+                count++;
+        int[] indices = new int[count];
+        int k = 0;
+        for (int i = 0; i < alphas.length; i++)
+            if (alphas[i] > epsilon)
+                indices[k++] = i;
+        return indices;
     }
 
     public double output(double[] x) {
-        List<FeatureVector> supportVectors = this.getSupportVectors();
+        final int d = data.dimension;
         double u = b;
-        for(FeatureVector v : supportVectors) {
-            u += v.alpha * v.y * kernel.apply(v.x, x);
+        for (int i = 0; i < data.size; i++) {
+            if (alphas[i] > epsilon)
+                u += alphas[i] * data.y[i] * kernel.apply(data.x, i * d, x, 0, d);
         }
         return u;
     }
 
+    public Model compile() {
+        return Model.of(this);
+    }
+
+    /**
+     * Seeds the alphas with a previous solution, e.g. before retraining on a
+     * training set with appended rows. Alphas beyond the previous ones are 0.
+     * Solvers continue from the seeded alphas after repairAlphas.
+     */
+    public void warmStart(double[] previousAlphas, double b) {
+        Arrays.fill(alphas, 0);
+        System.arraycopy(previousAlphas, 0, alphas, 0, Math.min(previousAlphas.length, alphas.length));
+        this.b = b;
+    }
+
+    // same as above, each support vector of the model seeds a training row with equal features
+    public void warmStart(Model model) {
+        final int d = data.dimension;
+        if (model.dimension != d)
+            throw new IllegalArgumentException("model has dimension " + model.dimension + ", data " + d);
+        // a DoubleBuffer compares by content, so it serves as key for a row
+        Map<DoubleBuffer, Integer> supportVectors = new HashMap<>();
+        for (int k = 0; k < model.coefficients.length; k++)
+            supportVectors.put(DoubleBuffer.wrap(model.supportVectors, k * d, d), k);
+        Arrays.fill(alphas, 0);
+        for (int i = 0; i < data.size; i++) {
+            Integer k = supportVectors.remove(DoubleBuffer.wrap(data.x, i * d, d));
+            if (k != null)
+                alphas[i] = Math.max(0, model.coefficients[k] * data.y[i]); // 0 if the label changed
+        }
+        this.b = model.b;
+    }
+
+    // clips the alphas to [0, c] and restores sum(alpha_i * y_i) = 0 by scaling down the larger class
+    public void repairAlphas(double c) {
+        double positive = 0, negative = 0;
+        for (int i = 0; i < data.size; i++) {
+            alphas[i] = Math.min(Math.max(alphas[i], 0), c);
+            if (data.y[i] > 0)
+                positive += alphas[i];
+            else
+                negative += alphas[i];
+        }
+        if (positive == negative)
+            return;
+        final int larger = positive > negative ? 1 : -1;
+        final double scale = positive > negative ? negative / positive : positive / negative;
+        for (int i = 0; i < data.size; i++)
+            if (data.y[i] == larger)
+                alphas[i] *= scale;
+    }
+
     public void updateB() {
-        List<FeatureVector> supportVectors = this.getSupportVectors();
+        int[] supportVectors = this.getSupportVectors();
+        KernelMatrix matrix = this.getKernelMatrix();
+        KernelCache cache = matrix == null ? this.getKernelCache() : null;
         double bsum = 0;
-        for (FeatureVector i: supportVectors) {
+        for (int i : supportVectors) {
             double subsum = 0;
-            for(FeatureVector j: supportVectors) {
-                subsum += j.alpha * j.y * kernel.apply(i.x, j.x);
+            if (matrix != null) {
+                // only the support vector entries, not whole rows
+                for (int j : supportVectors)
+                    subsum += alphas[j] * data.y[j] * matrix.get(i, j);
+            } else {
+                double[] row = cache.getRow(i);
+                for (int j : supportVectors)
+                    subsum += alphas[j] * data.y[j] * row[j];
             }
-            bsum += i.y - subsum;
+            bsum += data.y[i] - subsum;
         }
-        b = bsum / supportVectors.size();
+        b = bsum / supportVectors.length;
     }
 
     public void updateBAlternative() {
-        List<FeatureVector> supportVectors = this.getSupportVectors();
-        double[] w = new double[2];
-        for (FeatureVector v : supportVectors) {
-            w[0] += v.alpha * v.y * v.x[0];
-            w[1] += v.alpha * v.y * v.x[1];
-        }
+        int[] supportVectors = this.getSupportVectors();
+        final int d = data.dimension;
+        double[] w = new double[d];
+        for (int i : supportVectors)
+            for (int k = 0; k < d; k++)
+                w[k] += alphas[i] * data.y[i] * data.x[i * d + k];
         double bsum = 0;
-        for (FeatureVector v : supportVectors) {
-            bsum += v.y - kernel.apply(v.x, w);
+        for (int i : supportVectors) {
+            bsum += data.y[i] - kernel.apply(data.x, i * d, w, 0, d);
         }
-        b = bsum / supportVectors.size();
+        b = bsum / supportVectors.length;
     }
 
     public double assessAccuracy(List<FeatureVector> testVectors) {
+        double[][] rows = new double[testVectors.size()][];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = testVectors.get(i).x;
+        double[] outputs = this.compile().batchOutput(rows);
         int correctClassifications = 0;
-        for (FeatureVector v: testVectors) {
-            if (Math.signum(this.output(v.x)) == v.y)
+        for (int i = 0; i < rows.length; i++) {
+            if (Math.signum(outputs[i]) == testVectors.get(i).y)
                 correctClassifications++;
         }
         return correctClassifications * 1.0 / testVectors.size();
     }
+
+    public double assessAccuracy(TrainingSet testSet) {
+        double[] outputs = this.compile().batchOutput(testSet.x);
+        int correctClassifications = 0;
+        for (int i = 0; i < testSet.size; i++) {
+            if (Math.signum(outputs[i]) == testSet.y[i])
+                correctClassifications++;
+        }
+        return correctClassifications * 1.0 / testSet.size;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+package sample;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process scoring of single rows on a fixed set of worker threads. A
+ * Model is never modified after construction, so the current one is
+ * published through an AtomicReference and swapping it blocks no one.
+ * Requests wait in a bounded queue. Each worker takes everything queued, up
+ * to maxBatchSize rows, and scores it with one Model.batchOutput against a
+ * single snapshot. Batches therefore grow with the load without adding
+ * latency when idle. A full queue blocks submit, which is the backpressure.
+ *
+ *   java -cp out sample.ScoringService model.bin data/real3-t.csv --clients 16 --swap other.bin
+ */
+public class ScoringService implements AutoCloseable {
+
+    private static final String USAGE = "usage: ScoringService <model file> <data file> [--swap <model file>]"
+            + " [--clients 16] [--requests 200000] [--threads <cores>] [--batch 256] [--queue 4096]";
+
+    private static class Request {
+        final double[] x;
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+
+        Request(double[] x) {
+            this.x = x;
+        }
+    }
+
+    private final AtomicReference<Model> model;
+    private final int maxBatchSize;
+    private final BlockingQueue<Request> queue;
+    private final ExecutorService workers;
+    private volatile boolean closed = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public ScoringService(Model model) {
+        this(model, Runtime.getRuntime().availableProcessors(), 256, 4096);
+    }
+
+    public ScoringService(Model model, int threads, int maxBatchSize, int queueCapacity) {
+        this.model = new AtomicReference<>(model);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "scoring");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int t = 0; t < threads; t++)
+            workers.execute(this::work);
+    }
+
+    // decision value of x, which must not be modified until the future completes
+    public CompletableFuture<Double> submit(double[] x) {
+        Request request = new Request(x);
+        final int dimension = model.get().getDimension();
+        if (x.length != dimension) {
+            request.result.completeExceptionally(new IllegalArgumentException(
+                    "expected " + dimension + " features, got " + x.length));
+            return request.result;
+        }
+        if (closed) {
+            request.result.completeExceptionally(new IllegalStateException("scoring service is closed"));
+            return request.result;
+        }
+        try {
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.result.completeExceptionally(e);
+            return request.result;
+        }
+        // close() may have drained the queue just before the put
+        if (closed && queue.remove(request))
+            request.result.completeExceptionally(new IllegalStateException("scoring service is closed"));
+        return request.result;
+    }
+
+    public double score(double[] x) {
+        return this.submit(x).join();
+    }
+
+    public Model getModel() {
+        return model.get();
+    }
+
+    // requests already taken into a batch finish with the previous model
+    public Model swap(Model next) {
+        if (next.getDimension() != model.get().getDimension())
+            throw new IllegalArgumentException("cannot swap a model of dimension " + model.get().getDimension()
+                    + " for one of dimension " + next.getDimension());
+        return model.getAndSet(next);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    // fails requests still waiting and stops the workers
+    @Override
+    public void close() {
+        closed = true;
+        workers.shutdownNow();
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Request request : pending)
+            request.result.completeExceptionally(new IllegalStateException("scoring service is closed"));
+    }
+
+    private void work() {
+        final List<Request> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+
+            final Model current = model.get(); // the whole batch is scored by one snapshot
+            final int d = current.getDimension();
+            final double[] rows = new double[batch.size() * d];
+            for (int i = 0; i < batch.size(); i++)
+                System.arraycopy(batch.get(i).x, 0, rows, i * d, d);
+            try {
+                double[] outputs = current.batchOutput(rows);
+                for (int i = 0; i < batch.size(); i++)
+                    batch.get(i).result.complete(outputs[i]);
+            } catch (RuntimeException e) {
+                for (Request request : batch)
+                    request.result.completeExceptionally(e);
+            }
+            requests.addAndGet(batch.size());
+            batches.incrementAndGet();
+            batch.clear();
+        }
+    }
+
+    // stand-in client: concurrent callers score the rows of a data set while the models are swapped
+    public static void main(String[] args) {
+        String modelPath = null, dataPath = null, swapPath = null;
+        int clients = 16, total = 200000, threads = Runtime.getRuntime().availableProcessors(), batchSize = 256, queueCapacity = 4096;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    if (modelPath == null)
+                        modelPath = args[i];
+                    else
+                        dataPath = args[i];
+                    continue;
+                }
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("missing value for " + args[i]);
+                String value = args[++i];
+                switch (args[i - 1]) {
+                    case "--swap": swapPath = value; break;
+                    case "--clients": clients = Integer.parseInt(value); break;
+                    case "--requests": total = Integer.parseInt(value); break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--batch": batchSize = Integer.parseInt(value); break;
+                    case "--queue": queueCapacity = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("unknown option " + args[i - 1]);
+                }
+            }
+            if (modelPath == null || dataPath == null)
+                throw new IllegalArgumentException("missing model or data file");
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        final Model first, second;
+        final DataSet data;
+        try {
+            first = ModelFile.read(Paths.get(modelPath));
+            // without a second model the same one is swapped in as a fresh instance
+            second = ModelFile.read(Paths.get(swapPath != null ? swapPath : modelPath));
+            data = LibSVMReader.read(Paths.get(dataPath));
+        } catch (IOException e) {
+            System.err.println("could not read input: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        final double[] expectedFirst = first.batchOutput(data.x), expectedSecond = second.batchOutput(data.x);
+
+        final int requestsPerClient = total / clients;
+        final AtomicLong mismatches = new AtomicLong();
+        ExecutorService callers = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        long swaps = 0;
+        try (ScoringService service = new ScoringService(first, threads, batchSize, queueCapacity)) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                final int client = c;
+                done.add(callers.submit(() -> {
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        final int i = (int) (((long) client * requestsPerClient + r) % data.size);
+                        final double u = service.score(data.row(i));
+                        // either model may have scored it, but never a mix of both
+                        if (Math.abs(u - expectedFirst[i]) > 1e-9 && Math.abs(u - expectedSecond[i]) > 1e-9)
+                            mismatches.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                while (!future.isDone()) {
+                    Thread.sleep(10);
+                    service.swap(service.getModel() == first ? second : first);
+                    swaps++;
+                }
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format(Locale.ROOT,
+                    "%d requests from %d clients in %.2f s (%.0f/s), %d batches (%.1f rows each), %d swaps, %d mismatches",
+                    service.getRequests(), clients, seconds, service.getRequests() / seconds, service.getBatches(),
+                    (double) service.getRequests() / Math.max(1, service.getBatches()), swaps, mismatches.get()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only training data for the solvers: all features in one row-major
+ * array and the labels as +1/-1. Solver state (alphas, errors) is kept
+ * elsewhere, so one training set can be shared by several concurrent solves.
+ */
+public class TrainingSet {
+
+    public final int size;
+    public final int dimension;
+    public final double[] x; // row-major, size * dimension
+    public final byte[] y;
+
+    public TrainingSet(int size, int dimension, double[] x, byte[] y) {
+        this.size = size;
+        this.dimension = dimension;
+        this.x = x;
+        this.y = y;
+    }
+
+    public TrainingSet(DataSet dataSet) {
+        this(dataSet.size, dataSet.dimension, dataSet.x, new byte[dataSet.size]);
+        for (int i = 0; i < size; i++)
+            y[i] = (byte) (dataSet.y[i] >= 1 ? 1 : -1);
+    }
+
+    public static TrainingSet of(List<FeatureVector> vectors) {
+        final int size = vectors.size();
+        final int dimension = size == 0 ? 0 : vectors.get(0).x.length;
+        double[] x = new double[size * dimension];
+        byte[] y = new byte[size];
+        for (int i = 0; i < size; i++) {
+            FeatureVector v = vectors.get(i);
+            System.arraycopy(v.x, 0, x, i * dimension, dimension);
+            y[i] = (byte) v.y;
+        }
+        return new TrainingSet(size, dimension, x, y);
+    }
+
+    public double get(int row, int feature) {
+        return x[row * dimension + feature];
+    }
+
+    public double[] row(int i) {
+        return Arrays.copyOfRange(x, i * dimension, (i + 1) * dimension);
+    }
+}
@@ -0,0 +1,317 @@
+package sample.benchmarks;
+
+import sample.*;
+import sample.kernels.*;
+import sample.solvers.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Micro and macro benchmarks for kernels, solvers, prediction and loading.
+ * Each benchmark runs in a fresh JVM, so code compiled for one benchmark
+ * does not skew the next (--no-fork runs them all in this one). It is
+ * warmed up, then measured over several iterations of a fixed duration;
+ * the mean time per operation and its standard deviation are reported.
+ *
+ *   ./benchmarks.sh [name filter] [--rows 10000,100000] [--quick] [--no-fork]
+ *
+ * compiles the sources and runs this class from the project directory, so
+ * that data/ is found.
+ */
+public class Benchmarks {
+
+    private static final String[] REAL_DATA = {"real1", "real2", "real3"};
+    private static final int[] DIMENSIONS = {2, 16, 128, 1024};
+
+    private int warmupIterations = 5;
+    private int measurementIterations = 10;
+    private long iterationNanos = 1000000000L;
+    private String filter = "";
+    private String only; // the exact name, set for a forked benchmark
+    private boolean fork = true;
+    private final List<String> options = new ArrayList<>(); // passed on to the forks
+    private int[] syntheticRows = {10000};
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Supplier<Supplier<Object>>> setups = new ArrayList<>();
+    private final Map<TrainingSet, SVM> trained = new HashMap<>();
+    private volatile Object sink; // keeps results alive so the JIT cannot drop the work
+
+    public static void main(String[] args) throws IOException {
+        Benchmarks benchmarks = new Benchmarks();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quick")) {
+                benchmarks.warmupIterations = 2;
+                benchmarks.measurementIterations = 3;
+                benchmarks.iterationNanos = 200000000L;
+                benchmarks.options.add(args[i]);
+            } else if (args[i].equals("--no-fork")) {
+                benchmarks.fork = false;
+            } else if (args[i].equals("--only") && i + 1 < args.length) {
+                benchmarks.only = args[++i];
+            } else if (args[i].equals("--rows") && i + 1 < args.length) {
+                benchmarks.options.add(args[i]);
+                benchmarks.options.add(args[i + 1]);
+                String[] parts = args[++i].split(",");
+                benchmarks.syntheticRows = new int[parts.length];
+                for (int k = 0; k < parts.length; k++)
+                    benchmarks.syntheticRows[k] = Integer.parseInt(parts[k]);
+            } else {
+                benchmarks.filter = args[i];
+            }
+        }
+        benchmarks.register();
+        benchmarks.runAll();
+    }
+
+    private void add(String name, Supplier<Object> operation) {
+        this.addWithSetup(name, () -> operation);
+    }
+
+    // the setup only runs if the benchmark is selected
+    private void addWithSetup(String name, Supplier<Supplier<Object>> setup) {
+        names.add(name);
+        setups.add(setup);
+    }
+
+    private void register() throws IOException {
+        // kernels
+        Random random = new Random(42);
+        for (int d : DIMENSIONS) {
+            double[] x1 = randomVector(random, d), x2 = randomVector(random, d);
+            Kernel dot = new DotProductKernel(), poly = new PolynomialKernel(), rbf = new RBFKernel(1.0 / d),
+                    sigmoid = new SigmoidKernel(1.0 / d, 0);
+            add("kernel.dot.d" + d, () -> dot.apply(x1, x2));
+            add("kernel.poly.d" + d, () -> poly.apply(x1, x2));
+            add("kernel.rbf.d" + d, () -> rbf.apply(x1, x2));
+            add("kernel.sigmoid.d" + d, () -> sigmoid.apply(x1, x2));
+
+            // a row against 1000 points, through applyRow with precomputed norms and one apply per entry
+            double[] points = randomVector(random, 1000 * d);
+            double[] norms = Kernel.squaredNorms(points, d);
+            double[] row = new double[1000];
+            add("kernelRow.rbf.d" + d, () -> {
+                rbf.applyRow(x1, 0, Kernel.squaredNorm(x1, 0, d), points, d, norms, row);
+                return row;
+            });
+            add("kernelRow.rbfSingle.d" + d, () -> {
+                for (int j = 0; j < row.length; j++)
+                    row[j] = rbf.apply(x1, 0, points, j * d, d);
+                return row;
+            });
+        }
+
+        // solvers, prediction and loading on the bundled data
+        for (String name : REAL_DATA) {
+            Path path = Paths.get("data", name + ".csv");
+            if (!Files.exists(path))
+                continue;
+            TrainingSet data = new TrainingSet(LibSVMReader.read(path));
+            this.addSolvers("." + name, data);
+
+            double[] x = data.row(0);
+            addWithSetup("predict.svm." + name, () -> {
+                SVM svm = this.trained(data);
+                return () -> svm.output(x);
+            });
+            addWithSetup("predict.model." + name, () -> {
+                Model model = this.trained(data).compile();
+                return () -> model.output(x);
+            });
+            addWithSetup("predict.batch." + name, () -> {
+                Model model = this.trained(data).compile();
+                return () -> model.batchOutput(data.x);
+            });
+            addWithSetup("accuracy." + name, () -> {
+                SVM svm = this.trained(data);
+                return () -> svm.assessAccuracy(data);
+            });
+
+            add("load.csvImporter." + name, () -> CSVImporter.read(name));
+            add("load.libsvm." + name, () -> read(path));
+        }
+
+        // synthetic data sets
+        for (int rows : syntheticRows) {
+            Path path = writeSynthetic(rows, 4, new Random(rows));
+            TrainingSet data = new TrainingSet(LibSVMReader.read(path));
+            String suffix = ".synthetic" + rows;
+            this.addSolvers(suffix, data);
+            add("load.libsvm" + suffix, () -> read(path));
+
+            Path binaryPath = Files.createTempFile("benchmark", ".bin");
+            binaryPath.toFile().deleteOnExit();
+            BinaryDataSet.write(LibSVMReader.read(path), binaryPath);
+            add("load.binary" + suffix, () -> readBinary(binaryPath));
+
+            addWithSetup("predict.batch" + suffix, () -> {
+                Model model = this.trained(data).compile();
+                return () -> model.batchOutput(data.x);
+            });
+        }
+    }
+
+    // the solvers with and without a precomputed kernel matrix, and the matrix with each storage mode
+    private void addSolvers(String suffix, TrainingSet data) {
+        add("smo.platt" + suffix, () -> solve(data, new SMO(1), 0));
+        add("smo.wss2" + suffix, () -> solve(data, new SMO(1, new SecondOrderSelection()), 0));
+        add("esz.1m" + suffix, () -> solve(data, new ESZ(1000000, 1e-3), 0)); // uses a matrix within cacheSize
+
+        // only where the matrix leaves most of the heap to the rest
+        final long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+        if (KernelMatrix.bytes(data.size, false) <= maxBytes) {
+            final int matrixSize = (int) (maxBytes >> 20);
+            add("smo.platt.matrix" + suffix, () -> solve(data, new SMO(1), matrixSize));
+            add("smo.wss2.matrix" + suffix, () -> solve(data, new SMO(1, new SecondOrderSelection()), matrixSize));
+
+            Kernel rbf = new RBFKernel(1e-3);
+            add("matrix.double" + suffix, () -> KernelMatrix.compute(rbf, data.x, data.dimension, false, false));
+            add("matrix.float" + suffix, () -> KernelMatrix.compute(rbf, data.x, data.dimension, true, false));
+            add("matrix.offHeap" + suffix, () -> KernelMatrix.compute(rbf, data.x, data.dimension, false, true));
+        }
+    }
+
+    private SVM trained(TrainingSet data) {
+        return trained.computeIfAbsent(data, d -> solve(d, new SMO(1, new SecondOrderSelection()), 0));
+    }
+
+    private static SVM solve(TrainingSet data, Solver solver, int matrixSize) {
+        SVM svm = new SVM(data, new DotProductKernel(), 1e-5);
+        svm.matrixSize = matrixSize;
+        solver.solve(svm);
+        return svm;
+    }
+
+    private static DataSet read(Path path) {
+        try {
+            return LibSVMReader.read(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static DataSet readBinary(Path path) {
+        try {
+            return BinaryDataSet.open(path).toDataSet();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static double[] randomVector(Random random, int d) {
+        double[] x = new double[d];
+        for (int i = 0; i < d; i++)
+            x[i] = random.nextGaussian();
+        return x;
+    }
+
+    // two overlapping gaussian classes in libsvm format
+    private static Path writeSynthetic(int rows, int d, Random random) throws IOException {
+        Path path = Files.createTempFile("benchmark", ".csv");
+        path.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (int i = 0; i < rows; i++) {
+                int y = random.nextBoolean() ? 1 : 0;
+                writer.write(Integer.toString(y));
+                for (int k = 0; k < d; k++) {
+                    double value = random.nextGaussian() + (y == 1 ? 1 : -1);
+                    writer.write(String.format(Locale.ROOT, " %d:%.6e", k + 1, value));
+                }
+                writer.newLine();
+            }
+        }
+        return path;
+    }
+
+    private void runAll() throws IOException {
+        if (only == null)
+            System.out.println(String.format(Locale.ROOT, "%-36s %5s %14s %12s  %s",
+                    "Benchmark", "Cnt", "Score", "Error", "Units"));
+        for (int b = 0; b < names.size(); b++) {
+            final String name = names.get(b);
+            if (only != null ? !name.equals(only) : !name.contains(filter))
+                continue;
+            if (fork)
+                this.runForked(name);
+            else
+                this.run(name, setups.get(b).get());
+        }
+    }
+
+    // runs one benchmark in a new JVM with the same JVM options and class path
+    private void runForked(String name) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Benchmarks.class.getName());
+        command.addAll(options);
+        command.add("--no-fork");
+        command.add("--only");
+        command.add(name);
+        try {
+            int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exit != 0)
+                System.out.println(name + " failed with exit code " + exit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while running " + name, e);
+        }
+    }
+
+    private void run(String name, Supplier<Object> operation) {
+        for (int i = 0; i < warmupIterations; i++)
+            this.measure(operation);
+        double[] scores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++)
+            scores[i] = this.measure(operation);
+
+        double mean = 0;
+        for (double score : scores)
+            mean += score / scores.length;
+        double variance = 0;
+        for (double score : scores)
+            variance += (score - mean) * (score - mean) / Math.max(1, scores.length - 1);
+
+        String units = "ns/op";
+        double scale = 1;
+        if (mean > 1e6) {
+            units = "ms/op";
+            scale = 1e-6;
+        } else if (mean > 1e3) {
+            units = "us/op";
+            scale = 1e-3;
+        }
+        System.out.println(String.format(Locale.ROOT, "%-36s %5d %14.3f %12.3f  %s",
+                name, scores.length, mean * scale, Math.sqrt(variance) * scale, units));
+    }
+
+    // runs the operation for about one iteration time, returns nanoseconds per call
+    private double measure(Supplier<Object> operation) {
+        long calls = 0;
+        long batch = 1; // doubled while fast, so slow operations run only once
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (long i = 0; i < batch; i++)
+                sink = operation.get();
+            calls += batch;
+            batch = Math.min(2 * batch, 1 << 16);
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return (double) elapsed / calls;
+    }
+}
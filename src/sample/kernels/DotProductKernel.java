@@ -8,4 +8,31 @@ public class DotProductKernel implements Kernel {
             prod += x1[i] * x2[i];
         return prod;
     }
+
+    public double apply(double[] x1, int offset1, double[] x2, int offset2, int length) {
+        return dot(x1, offset1, x2, offset2, length);
+    }
+
+    @Override
+    public void applyRow(double[] x1, int offset1, double[] points, int dimension, double[] into) {
+        dotRow(x1, offset1, points, dimension, into);
+    }
+
+    static double dot(double[] x1, int offset1, double[] x2, int offset2, int length) {
+        double prod = 0;
+        for(int i = 0; i < length; i++)
+            prod += x1[offset1 + i] * x2[offset2 + i];
+        return prod;
+    }
+
+    // the inner loop runs over contiguous memory with no calls, so the JIT can unroll it
+    static void dotRow(double[] x1, int offset1, double[] points, int dimension, double[] into) {
+        final int n = into.length;
+        for (int j = 0, offset2 = 0; j < n; j++, offset2 += dimension) {
+            double prod = 0;
+            for (int i = 0; i < dimension; i++)
+                prod += x1[offset1 + i] * points[offset2 + i];
+            into[j] = prod;
+        }
+    }
 }
@@ -2,5 +2,31 @@ package sample.kernels;
 
 public interface Kernel {
     double apply(double[] x1, double[] x2);
-}
 
+    // same as apply, but on rows stored inside flat (row-major) arrays
+    double apply(double[] x1, int offset1, double[] x2, int offset2, int length);
+
+    // K(x1, p_j) for the first into.length rows p_j of the flat array points, written to into[j]
+    default void applyRow(double[] x1, int offset1, double[] points, int dimension, double[] into) {
+        for (int j = 0; j < into.length; j++)
+            into[j] = this.apply(x1, offset1, points, j * dimension, dimension);
+    }
+
+    // same, given ||x1||^2 and ||p_j||^2 in squaredNorms[j], which kernels on distances can use
+    default void applyRow(double[] x1, int offset1, double squaredNorm1, double[] points, int dimension,
+                          double[] squaredNorms, double[] into) {
+        this.applyRow(x1, offset1, points, dimension, into);
+    }
+
+    static double squaredNorm(double[] x, int offset, int length) {
+        return DotProductKernel.dot(x, offset, x, offset, length);
+    }
+
+    // ||p_j||^2 for each row p_j of the flat array points, computed once for a fixed set of points
+    static double[] squaredNorms(double[] points, int dimension) {
+        double[] norms = new double[dimension == 0 ? 0 : points.length / dimension];
+        for (int j = 0; j < norms.length; j++)
+            norms[j] = squaredNorm(points, j * dimension, dimension);
+        return norms;
+    }
+}
@@ -0,0 +1,199 @@
+package sample.kernels;
+
+import java.util.Arrays;
+
+/**
+ * Caches rows of the kernel matrix K(i,j) for a fixed set of training points,
+ * indexed by their position. Rows are evicted in least recently used order
+ * once the memory budget is exhausted (similar to the cache in libsvm).
+ * If a precomputed KernelMatrix is given, the cache holds no rows of its own,
+ * as the packed triangle has no contiguous rows to hand out: entries are
+ * read from the matrix, and getRow copies a row into one of MIN_ROWS scratch
+ * rows. Solvers that only need some columns of a row pass them to getRow, so
+ * only those entries are copied.
+ */
+public class KernelCache {
+
+    private static final int MIN_ROWS = 2;
+
+    private final Kernel kernel;
+    private final double[] points; // row-major
+    private final int dimension;
+    private final int size;
+    private final double[] diagonal;
+    private final double[] squaredNorms; // of the points, null if rows come from the matrix
+    private final KernelMatrix matrix; // null if rows are computed with the kernel
+
+    private final double[][] rows;
+    private final double[][] partialRows; // scratch rows for getRow with columns, matrix only
+    private int nextPartialRow = 0;
+    private final int maxRows;
+    private int cachedRows = 0;
+
+    // doubly linked LRU list over row indices, n is the sentinel
+    private final int[] prev;
+    private final int[] next;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evaluations = 0;
+
+    public KernelCache(Kernel kernel, double[] points, int dimension, int sizeMB) {
+        this(kernel, points, dimension, sizeMB, null);
+    }
+
+    public KernelCache(KernelMatrix matrix, double[] points, int dimension, int sizeMB) {
+        this(matrix.getKernel(), points, dimension, sizeMB, matrix);
+    }
+
+    private KernelCache(Kernel kernel, double[] points, int dimension, int sizeMB, KernelMatrix matrix) {
+        this.kernel = kernel;
+        this.points = points;
+        this.dimension = dimension;
+        this.size = dimension == 0 ? 0 : points.length / dimension;
+        this.matrix = matrix;
+        final int n = size;
+        if (matrix != null && matrix.size() != n)
+            throw new IllegalArgumentException("kernel matrix of " + matrix.size() + " points for " + n + " points");
+
+        long rowBytes = Math.max(1L, 8L * n);
+        long budget = matrix != null ? 0 : (long) sizeMB * 1024 * 1024;
+        this.maxRows = (int) Math.max(MIN_ROWS, Math.min(n, budget / rowBytes));
+
+        this.rows = new double[n][];
+        this.partialRows = matrix != null ? new double[MIN_ROWS][n] : null;
+        this.prev = new int[n + 1];
+        this.next = new int[n + 1];
+        prev[n] = n;
+        next[n] = n;
+
+        this.diagonal = new double[n];
+        this.squaredNorms = matrix == null ? Kernel.squaredNorms(points, dimension) : null;
+        if (matrix != null) {
+            for (int i = 0; i < n; i++)
+                diagonal[i] = matrix.diagonal(i);
+        } else {
+            for (int i = 0; i < n; i++)
+                diagonal[i] = kernel.apply(points, i * dimension, points, i * dimension, dimension);
+            evaluations += n;
+        }
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double diagonal(int i) {
+        return diagonal[i];
+    }
+
+    public double get(int i, int j) {
+        if (i == j)
+            return diagonal[i];
+        if (matrix != null)
+            return matrix.get(i, j);
+        if (rows[i] == null && rows[j] != null)
+            return this.getRow(j)[i]; // the matrix is symmetric
+        return this.getRow(i)[j];
+    }
+
+    /**
+     * Returns row i of the kernel matrix. The returned array is owned by the
+     * cache and must not be modified or held on to across other calls.
+     */
+    public double[] getRow(int i) {
+        double[] row = rows[i];
+        if (row != null) {
+            hits++;
+            unlink(i);
+            linkFirst(i);
+            return row;
+        }
+        misses++;
+
+        final int n = size;
+        if (cachedRows == maxRows) {
+            int eldest = prev[n];
+            unlink(eldest);
+            row = rows[eldest];
+            rows[eldest] = null;
+            cachedRows--;
+        } else {
+            row = new double[n];
+        }
+
+        if (matrix != null) {
+            matrix.copyRow(i, row);
+        } else {
+            kernel.applyRow(points, i * dimension, squaredNorms[i], points, dimension, squaredNorms, row);
+            evaluations += n;
+        }
+
+        rows[i] = row;
+        cachedRows++;
+        linkFirst(i);
+        return row;
+    }
+
+    /**
+     * Same as getRow, but only the entries of the given columns[from, to) are
+     * needed. A cache backed by a matrix copies just those, the others are
+     * undefined, and the last MIN_ROWS rows returned stay valid. Such reads
+     * are not counted as hits or misses.
+     */
+    public double[] getRow(int i, int[] columns, int from, int to) {
+        if (matrix == null)
+            return this.getRow(i);
+        final double[] row = partialRows[nextPartialRow];
+        nextPartialRow = (nextPartialRow + 1) % MIN_ROWS;
+        matrix.copyEntries(i, columns, from, to, row);
+        return row;
+    }
+
+    public void clear() {
+        Arrays.fill(rows, null);
+        final int n = size;
+        prev[n] = n;
+        next[n] = n;
+        cachedRows = 0;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    @Override
+    public String toString() {
+        return "KernelCache[rows " + cachedRows + "/" + maxRows + ", hits " + hits
+                + ", misses " + misses + ", evaluations " + evaluations + "]";
+    }
+
+    private void unlink(int i) {
+        next[prev[i]] = next[i];
+        prev[next[i]] = prev[i];
+    }
+
+    private void linkFirst(int i) {
+        final int head = size;
+        next[i] = next[head];
+        prev[i] = head;
+        prev[next[head]] = i;
+        next[head] = i;
+    }
+}
@@ -0,0 +1,173 @@
+package sample.kernels;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The complete kernel matrix of a fixed set of points. Only the upper triangle
+ * is stored, packed row by row, so n points take n * (n + 1) / 2 entries. The
+ * entries are doubles or, halving the size, floats, held on the heap or in a
+ * direct buffer. The matrix is computed in square tiles of TILE points on the
+ * common fork join pool and is read-only afterwards, so threads may share it.
+ */
+public class KernelMatrix {
+
+    private static final int TILE = 128;
+
+    private final Kernel kernel;
+    private final int size;
+    private final DoubleBuffer doubles; // exactly one of these is set
+    private final FloatBuffer floats;
+    private final int[] rowBase; // entry (i, j) with i <= j is at rowBase[i] + j
+
+    private KernelMatrix(Kernel kernel, int size, boolean singlePrecision, boolean offHeap) {
+        this.kernel = kernel;
+        this.size = size;
+        final long entries = entries(size);
+        if (bytes(size, singlePrecision) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("kernel matrix of " + size + " points is too large");
+        final int length = (int) entries;
+        this.rowBase = new int[size];
+        for (int i = 0; i < size; i++)
+            rowBase[i] = (int) (this.index(i, i) - i);
+        if (offHeap) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length * (singlePrecision ? 4 : 8)).order(ByteOrder.nativeOrder());
+            this.doubles = singlePrecision ? null : buffer.asDoubleBuffer();
+            this.floats = singlePrecision ? buffer.asFloatBuffer() : null;
+        } else {
+            this.doubles = singlePrecision ? null : DoubleBuffer.wrap(new double[length]);
+            this.floats = singlePrecision ? FloatBuffer.wrap(new float[length]) : null;
+        }
+    }
+
+    public static KernelMatrix compute(Kernel kernel, double[] points, int dimension,
+                                       boolean singlePrecision, boolean offHeap) {
+        final int n = dimension == 0 ? 0 : points.length / dimension;
+        KernelMatrix matrix = new KernelMatrix(kernel, n, singlePrecision, offHeap);
+        final double[] norms = Kernel.squaredNorms(points, dimension);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += TILE) {
+            // the points of one column tile, so applyRow computes a row segment at once
+            final int columnFrom = from, columnTo = Math.min(n, from + TILE);
+            final double[] columnPoints = new double[(columnTo - columnFrom) * dimension];
+            System.arraycopy(points, columnFrom * dimension, columnPoints, 0, columnPoints.length);
+            final double[] columnNorms = Arrays.copyOfRange(norms, columnFrom, columnTo);
+            for (int rowFrom = 0; rowFrom <= columnFrom; rowFrom += TILE) {
+                final int tileFrom = rowFrom, tileTo = Math.min(n, rowFrom + TILE);
+                tasks.add(() -> {
+                    matrix.fillTile(points, norms, dimension, tileFrom, tileTo, columnPoints, columnNorms, columnFrom);
+                    return null;
+                });
+            }
+        }
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks))
+                future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        return matrix;
+    }
+
+    // rows [rowFrom, rowTo) against the column tile, only entries with column >= row are stored
+    private void fillTile(double[] points, double[] norms, int dimension, int rowFrom, int rowTo,
+                          double[] columnPoints, double[] columnNorms, int columnFrom) {
+        final double[] segment = new double[columnNorms.length];
+        for (int i = rowFrom; i < rowTo; i++) {
+            kernel.applyRow(points, i * dimension, norms[i], columnPoints, dimension, columnNorms, segment);
+            final int first = Math.max(0, i - columnFrom);
+            final int index = (int) this.index(i, columnFrom + first);
+            for (int k = first; k < segment.length; k++)
+                this.put(index + k - first, segment[k]);
+        }
+    }
+
+    public static long entries(int size) {
+        return (long) size * (size + 1) / 2;
+    }
+
+    public static long bytes(int size, boolean singlePrecision) {
+        return entries(size) * (singlePrecision ? 4 : 8);
+    }
+
+    // position of entry (i, j) with i <= j, rows of the upper triangle are stored one after another
+    private long index(int i, int j) {
+        return (long) i * size - (long) i * (i - 1) / 2 + (j - i);
+    }
+
+    private void put(int index, double value) {
+        if (doubles != null)
+            doubles.put(index, value);
+        else
+            floats.put(index, (float) value);
+    }
+
+    private double at(int index) {
+        return doubles != null ? doubles.get(index) : floats.get(index);
+    }
+
+    public double get(int i, int j) {
+        return i <= j ? this.at(rowBase[i] + j) : this.at(rowBase[j] + i);
+    }
+
+    public double diagonal(int i) {
+        return this.at(rowBase[i] + i);
+    }
+
+    // copies only the entries (i, j) for j in columns[from, to) into row i of the given array
+    public void copyEntries(int i, int[] columns, int from, int to, double[] into) {
+        final int base = rowBase[i];
+        for (int k = from; k < to; k++) {
+            final int j = columns[k];
+            into[j] = this.at(j < i ? rowBase[j] + i : base + j);
+        }
+    }
+
+    // copies row i into the given array of size() entries
+    public void copyRow(int i, double[] into) {
+        // left of the diagonal the row is column i of the rows above
+        int index = i;
+        for (int j = 0; j < i; j++) {
+            into[j] = this.at(index);
+            index += size - j - 1;
+        }
+        index = (int) this.index(i, i);
+        if (doubles != null) {
+            doubles.get(index, into, i, size - i);
+        } else {
+            for (int j = i; j < size; j++)
+                into[j] = floats.get(index++);
+        }
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isSinglePrecision() {
+        return floats != null;
+    }
+
+    public boolean isOffHeap() {
+        return doubles != null ? doubles.isDirect() : floats.isDirect();
+    }
+
+    @Override
+    public String toString() {
+        return "KernelMatrix[" + size + " points, " + (this.isSinglePrecision() ? "float" : "double")
+                + (this.isOffHeap() ? ", off-heap" : "") + "]";
+    }
+}
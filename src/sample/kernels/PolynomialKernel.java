@@ -1,13 +1,72 @@
 package sample.kernels;
 
+/**
+ * K(x, z) = (gamma * <x, z> + coef0)^degree
+ */
 public class PolynomialKernel implements Kernel {
 
+    private final double gamma;
+    private final double coef0;
+    private final int degree;
+
+    public PolynomialKernel() {
+        this(1, 1, 2);
+    }
+
+    public PolynomialKernel(double gamma, double coef0, int degree) {
+        if (degree < 1)
+            throw new IllegalArgumentException("degree must be positive");
+        this.gamma = gamma;
+        this.coef0 = coef0;
+        this.degree = degree;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public double getCoef0() {
+        return coef0;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
     public double apply(double[] x1, double[] x2) {
-        double prod = 0;
-        for(int i = 0; i < x2.length; i++) {
-            double t  = 1 + (x1[i] * x2[i]);
-            prod += Math.pow(t, 2);
+        return this.power(gamma * DotProductKernel.dot(x1, 0, x2, 0, x2.length) + coef0);
+    }
+
+    public double apply(double[] x1, int offset1, double[] x2, int offset2, int length) {
+        return this.power(gamma * DotProductKernel.dot(x1, offset1, x2, offset2, length) + coef0);
+    }
+
+    @Override
+    public void applyRow(double[] x1, int offset1, double[] points, int dimension, double[] into) {
+        DotProductKernel.dotRow(x1, offset1, points, dimension, into);
+        for (int j = 0; j < into.length; j++)
+            into[j] = this.power(gamma * into[j] + coef0);
+    }
+
+    // multiplications instead of Math.pow, the degree is small in practice
+    private double power(double t) {
+        switch (degree) {
+            case 1: return t;
+            case 2: return t * t;
+            case 3: return t * t * t;
+            case 4: {
+                final double t2 = t * t;
+                return t2 * t2;
+            }
+            default: {
+                double result = 1;
+                for (int e = degree; e > 0; e >>= 1) {
+                    if ((e & 1) != 0)
+                        result *= t;
+                    t *= t;
+                }
+                return result;
+            }
         }
-        return prod;
     }
 }
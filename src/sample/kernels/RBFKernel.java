@@ -0,0 +1,44 @@
+package sample.kernels;
+
+/**
+ * Gaussian kernel K(x, z) = exp(-gamma * ||x - z||^2). Given the squared
+ * norms, rows are computed as ||x||^2 + ||z||^2 - 2<x, z>, so each entry
+ * costs one dot product. The callers compute the norms once for their fixed
+ * set of points, the kernel itself holds no state.
+ */
+public class RBFKernel implements Kernel {
+
+    private final double gamma;
+
+    public RBFKernel(double gamma) {
+        this.gamma = gamma;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public double apply(double[] x1, double[] x2) {
+        return this.apply(x1, 0, x2, 0, x2.length);
+    }
+
+    public double apply(double[] x1, int offset1, double[] x2, int offset2, int length) {
+        double distance = 0;
+        for (int i = 0; i < length; i++) {
+            final double d = x1[offset1 + i] - x2[offset2 + i];
+            distance += d * d;
+        }
+        return Math.exp(-gamma * distance);
+    }
+
+    @Override
+    public void applyRow(double[] x1, int offset1, double squaredNorm1, double[] points, int dimension,
+                         double[] squaredNorms, double[] into) {
+        DotProductKernel.dotRow(x1, offset1, points, dimension, into);
+        for (int j = 0; j < into.length; j++) {
+            // round-off can make the distance of (almost) equal points slightly negative
+            final double distance = Math.max(0, squaredNorm1 + squaredNorms[j] - 2 * into[j]);
+            into[j] = Math.exp(-gamma * distance);
+        }
+    }
+}
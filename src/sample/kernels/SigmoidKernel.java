@@ -0,0 +1,38 @@
+package sample.kernels;
+
+/**
+ * K(x, z) = tanh(gamma * <x, z> + coef0), not positive semi-definite for all parameters
+ */
+public class SigmoidKernel implements Kernel {
+
+    private final double gamma;
+    private final double coef0;
+
+    public SigmoidKernel(double gamma, double coef0) {
+        this.gamma = gamma;
+        this.coef0 = coef0;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public double getCoef0() {
+        return coef0;
+    }
+
+    public double apply(double[] x1, double[] x2) {
+        return Math.tanh(gamma * DotProductKernel.dot(x1, 0, x2, 0, x2.length) + coef0);
+    }
+
+    public double apply(double[] x1, int offset1, double[] x2, int offset2, int length) {
+        return Math.tanh(gamma * DotProductKernel.dot(x1, offset1, x2, offset2, length) + coef0);
+    }
+
+    @Override
+    public void applyRow(double[] x1, int offset1, double[] points, int dimension, double[] into) {
+        DotProductKernel.dotRow(x1, offset1, points, dimension, into);
+        for (int j = 0; j < into.length; j++)
+            into[j] = Math.tanh(gamma * into[j] + coef0);
+    }
+}
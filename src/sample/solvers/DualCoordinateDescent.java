@@ -0,0 +1,209 @@
+package sample.solvers;
+
+import sample.SVM;
+import sample.TrainingSet;
+import sample.kernels.DotProductKernel;
+
+import java.util.Random;
+
+/**
+ * Dual coordinate descent for the linear kernel (Hsieh et al. 2008, as in
+ * liblinear). The weight vector w is maintained explicitly, so updating one
+ * alpha costs O(d) instead of the O(n) error update of SMO. The threshold is
+ * learned as the weight of a constant extra feature, which removes the
+ * equality constraint sum(alpha_i * y_i) = 0 but regularizes b slightly.
+ * Like all coordinate descent methods it converges slowly on badly scaled
+ * features (say in the hundreds with C = 1), so standardize them first.
+ * Each pass visits the active alphas in random order, alphas at a bound whose
+ * projected gradient points outwards are shrunk away.
+ */
+public class DualCoordinateDescent implements Solver {
+
+    private final double c;
+    private double tolerance = 0.1; // on the projected gradient gap, as in liblinear
+    private int maxIterations = 1000;
+    private boolean shrinking = true;
+    private final Random random = new Random();
+
+    private static final double BIAS = 1; // value of the constant feature
+
+    private long rounds;
+    private boolean converged;
+    private SolverMetrics metrics;
+    private ProgressListener progressListener;
+    private volatile boolean cancelled = false;
+
+    public DualCoordinateDescent(double c) {
+        this.c = c;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public void setShrinking(boolean shrinking) {
+        this.shrinking = shrinking;
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    // false if the last solve stopped at maxIterations (or was cancelled) before reaching the tolerance
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void solve(SVM svm) {
+        if (!(svm.kernel instanceof DotProductKernel))
+            throw new IllegalArgumentException("dual coordinate descent needs the linear kernel");
+        final TrainingSet data = svm.data;
+        final int n = data.size, d = data.dimension;
+        final double[] x = data.x;
+        final double[] alphas = svm.alphas;
+        if (metrics != null)
+            metrics.start();
+        long phaseStart = System.nanoTime();
+
+        // continue from the alphas already on the SVM, b is part of w here
+        final double[] w = new double[d];
+        double wb = 0;
+        final double[] diagonal = new double[n];
+        for (int i = 0; i < n; i++) {
+            final int offset = i * d;
+            alphas[i] = Math.min(Math.max(alphas[i], 0), c);
+            double squaredNorm = BIAS * BIAS;
+            for (int k = 0; k < d; k++)
+                squaredNorm += x[offset + k] * x[offset + k];
+            diagonal[i] = squaredNorm;
+            if (alphas[i] != 0) {
+                final double t = alphas[i] * data.y[i];
+                for (int k = 0; k < d; k++)
+                    w[k] += t * x[offset + k];
+                wb += t * BIAS;
+            }
+        }
+        final int[] active = new int[n];
+        for (int i = 0; i < n; i++)
+            active[i] = i;
+        int activeSize = n;
+        if (metrics != null) {
+            metrics.addPhase("initialization", System.nanoTime() - phaseStart);
+            phaseStart = System.nanoTime();
+        }
+
+        double maxOld = Double.POSITIVE_INFINITY, minOld = Double.NEGATIVE_INFINITY;
+        rounds = 0;
+        converged = false;
+        while (rounds < maxIterations && !cancelled) {
+            rounds++;
+            double maxNew = Double.NEGATIVE_INFINITY, minNew = Double.POSITIVE_INFINITY;
+            long changed = 0;
+            for (int s = activeSize - 1; s > 0; s--) {
+                final int r = random.nextInt(s + 1);
+                final int t = active[s];
+                active[s] = active[r];
+                active[r] = t;
+            }
+            for (int s = 0; s < activeSize; s++) {
+                final int i = active[s];
+                final int offset = i * d;
+                final double y = data.y[i];
+                double dot = wb * BIAS;
+                for (int k = 0; k < d; k++)
+                    dot += w[k] * x[offset + k];
+                final double gradient = y * dot - 1;
+
+                // projected gradient, alphas at a bound that would leave the box are skipped or shrunk
+                double projected = gradient;
+                if (alphas[i] == 0) {
+                    if (shrinking && gradient > maxOld) {
+                        active[s--] = active[--activeSize];
+                        active[activeSize] = i;
+                        continue;
+                    }
+                    projected = Math.min(gradient, 0);
+                } else if (alphas[i] == c) {
+                    if (shrinking && gradient < minOld) {
+                        active[s--] = active[--activeSize];
+                        active[activeSize] = i;
+                        continue;
+                    }
+                    projected = Math.max(gradient, 0);
+                }
+                maxNew = Math.max(maxNew, projected);
+                minNew = Math.min(minNew, projected);
+
+                if (Math.abs(projected) > 1e-12) {
+                    final double old = alphas[i];
+                    alphas[i] = Math.min(Math.max(old - gradient / diagonal[i], 0), c);
+                    final double delta = (alphas[i] - old) * y;
+                    for (int k = 0; k < d; k++)
+                        w[k] += delta * x[offset + k];
+                    wb += delta * BIAS;
+                    changed++;
+                }
+            }
+            svm.b = wb * BIAS;
+            this.reportRound(alphas, w, wb, changed);
+
+            if (maxNew - minNew <= tolerance) {
+                if (activeSize == n) {
+                    converged = true;
+                    break;
+                }
+                // converged on the active set, check all alphas once more
+                activeSize = n;
+                maxOld = Double.POSITIVE_INFINITY;
+                minOld = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            maxOld = maxNew > 0 ? maxNew : Double.POSITIVE_INFINITY;
+            minOld = minNew < 0 ? minNew : Double.NEGATIVE_INFINITY;
+        }
+        svm.b = wb * BIAS;
+        if (!converged && !cancelled)
+            System.err.println("WARNING: dual coordinate descent reached the maximum of " + maxIterations
+                    + " iterations, consider standardizing the features or a larger tolerance");
+        if (metrics != null) {
+            metrics.addPhase("optimization", System.nanoTime() - phaseStart);
+            metrics.converged = converged;
+        }
+    }
+
+    private void reportRound(double[] alphas, double[] w, double wb, long changed) {
+        if (metrics == null && progressListener == null)
+            return;
+        // dual objective sum(alpha) - ||w||^2 / 2, including the bias weight
+        double objective = -0.5 * wb * wb;
+        for (double weight : w)
+            objective -= 0.5 * weight * weight;
+        for (double alpha : alphas)
+            objective += alpha;
+        if (metrics != null) {
+            metrics.successfulSteps += changed;
+            metrics.roundFinished(rounds, changed, -1, objective);
+        }
+        if (progressListener != null)
+            progressListener.progress(rounds, -1, objective);
+    }
+}
@@ -1,98 +1,257 @@
 package sample.solvers;
 
-import sample.FeatureVector;
 import sample.SVM;
+import sample.TrainingSet;
+import sample.kernels.KernelMatrix;
 
-public class ESZ implements Solver { ;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-	class AlphaSet {
-		double[] alphas;
-		double score;
-	}
+public class ESZ implements Solver {
+
+	// a few alphas offset randomly, plus one alpha that repairs sum(alpha*y) = 0
+	class Candidate {
+		final int[] indices = new int[mutationCount + 1];
+		final double[] deltas = new double[mutationCount + 1];
+		double gain;
 
-	@FunctionalInterface
-	public interface AlphaGenerator {
-		double generate(int index);
+		void copyFrom(Candidate other) {
+			System.arraycopy(other.indices, 0, indices, 0, indices.length);
+			System.arraycopy(other.deltas, 0, deltas, 0, deltas.length);
+			gain = other.gain;
+		}
 	}
 
-	private int iterations;
-	private double delta;
+	private final int iterations;
+	private final double delta;
+	private int mutations = 2;
+	private int mutationCount; // mutations, at most n - 1 so that the indices of a candidate are distinct
+	private int populationSize = 256;
 
 	private SVM svm;
-	AlphaSet resultSet;
+	private TrainingSet data;
+	private double[] alphas;
+	private KernelMatrix matrix; // from the SVM if it fits into its matrix or cache size, otherwise null
+	private double[] row; // scratch row copied from the matrix
+	private double[] gradient; // sum_j alpha_j * y_j * K(i,j)
+	private double score;
+	private long generations;
+	private SolverMetrics metrics; // null unless instrumented
+	private ProgressListener progressListener;
+	private volatile boolean cancelled = false;
 
 	public ESZ(int iterations, double delta) {
 		this.iterations = iterations;
 		this.delta = delta;
 	}
-    
-    public void solve(SVM svm) {
-    	this.svm = svm;
-		this.resultSet = this.generateSet(i -> Math.random());
 
-		for(int s=0; s<iterations; s++) {
-			AlphaSet evolvedSet = this.generateSet(i -> this.offsetRandomly(resultSet.alphas[i]));
-			if(evolvedSet.score > resultSet.score)
-				resultSet = evolvedSet;
+	public void setMutations(int mutations) {
+		this.mutations = mutations;
+	}
+
+	public long getGenerations() {
+		return generations;
+	}
+
+	@Override
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	// only improving candidates are accepted, so the current alphas are the best found
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	// candidates evaluated in parallel per generation
+	public void setPopulationSize(int populationSize) {
+		this.populationSize = populationSize;
+	}
+
+	public void solve(SVM svm) {
+		this.svm = svm;
+		this.data = svm.data;
+		if (data.size < 2)
+			throw new IllegalArgumentException("ESZ needs at least two training vectors");
+		this.mutationCount = Math.min(mutations, data.size - 1);
+		// evolved in place, so progress listeners see the current solution
+		this.alphas = svm.alphas;
+		if (metrics != null)
+			metrics.start();
+		long phaseStart = System.nanoTime();
+		// computed here unless the SVM already holds it. ESZ keeps no row cache, so the matrix may use
+		// cacheSize as well, like the dense gram it replaced
+		final long evaluations = svm.getKernelEvaluations();
+		this.matrix = svm.getKernelMatrix(Math.max(svm.matrixSize, svm.cacheSize));
+		this.row = matrix != null ? new double[data.size] : null;
+		if (metrics != null) {
+			// kernel values computed on demand without a matrix are not counted
+			metrics.addKernelCounts(svm.getKernelEvaluations() - evaluations, 0, 0);
+			metrics.addPhase("gram", System.nanoTime() - phaseStart);
+			phaseStart = System.nanoTime();
 		}
 
-		this.apply(resultSet);
-    }
+		SplittableRandom random = new SplittableRandom();
+		this.initialize(random);
+		if (metrics != null) {
+			metrics.addPhase("initialization", System.nanoTime() - phaseStart);
+			phaseStart = System.nanoTime();
+		}
 
-	private AlphaSet generateSet(AlphaGenerator generator) {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		final int chunks = Math.max(1, Math.min(pool.getParallelism(), populationSize));
+		final int perChunk = (populationSize + chunks - 1) / chunks;
+		List<Callable<Candidate>> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++)
+			tasks.add(this.evaluator(random.split(), perChunk));
 
-    	int count = svm.vectors.size();
-		double[] alphas = new double[count];
+		generations = 0;
+		for (long evaluated = 0; evaluated < iterations && !cancelled; evaluated += (long) chunks * perChunk) {
+			generations++;
+			Candidate best = null;
+			for (Future<Candidate> future : pool.invokeAll(tasks)) {
+				Candidate candidate = this.get(future);
+				if (best == null || candidate.gain > best.gain)
+					best = candidate;
+			}
+			final boolean accepted = best.gain > 0;
+			if (accepted)
+				this.accept(best);
+			if (metrics != null) {
+				// an accepted generation counts as a successful step
+				if (accepted)
+					metrics.successfulSteps++;
+				else
+					metrics.failedSteps++;
+				metrics.roundFinished(generations, accepted ? 1 : 0, -1, score);
+			}
+			if (progressListener != null)
+				progressListener.progress(generations, -1, score);
+		}
+		this.finishThreshold();
+		if (metrics != null)
+			metrics.addPhase("evolution", System.nanoTime() - phaseStart);
+	}
 
+	// the alphas have no upper bound, so every support vector has y*u = 1, O(n) thanks to the gradient
+	private void finishThreshold() {
+		double sum = 0;
+		int count = 0;
+		for (int i = 0; i < data.size; i++) {
+			if (alphas[i] > svm.epsilon) {
+				sum += data.y[i] - gradient[i];
+				count++;
+			}
+		}
+		if (count > 0)
+			svm.b = sum / count;
+	}
+
+	private double kernel(int i, int j) {
+		if (matrix != null)
+			return matrix.get(i, j);
+		final int d = data.dimension;
+		return svm.kernel.apply(data.x, i * d, data.x, j * d, d);
+	}
+
+	// the alphas already on the SVM (e.g. from SVM.warmStart), otherwise random ones
+	// with the last one chosen to satisfy the equality constraint
+	private void initialize(SplittableRandom random) {
+		final int n = data.size;
+		final int constrainedIndex = n - 1;
+		svm.repairAlphas(Double.POSITIVE_INFINITY);
+		boolean seeded = false;
+		for (int i = 0; i < n && !seeded; i++)
+			seeded = alphas[i] > 0;
 		// try out alpha combinations until one is valid
-		while(true) {
-			int constrainedIndex = count - 1;
+		while (!seeded) {
 			double sum = 0;
-			for (int i = 0; i < count; i++) {
-				FeatureVector v = svm.vectors.get(i);
-				double newAlpha = 0;
-				if (i != constrainedIndex) {
-					newAlpha = generator.generate(i);
-					sum += newAlpha * v.y;
-				}
-				alphas[i] = newAlpha;
+			for (int i = 0; i < constrainedIndex; i++) {
+				alphas[i] = random.nextDouble();
+				sum += alphas[i] * data.y[i];
 			}
-			alphas[constrainedIndex] = -sum * svm.vectors.get(constrainedIndex).y;
-			if(alphas[constrainedIndex] > 0) {
+			alphas[constrainedIndex] = -sum * data.y[constrainedIndex];
+			if (alphas[constrainedIndex] > 0)
 				break;
-			}
 		}
 
-		// calculate objective function
+		gradient = new double[n];
 		double s1 = 0;
+		for (int j = 0; j < n; j++) {
+			s1 += alphas[j];
+			final double coefficient = alphas[j] * data.y[j];
+			for (int i = 0; i < n; i++)
+				gradient[i] += coefficient * this.kernel(i, j);
+		}
 		double s2 = 0;
+		for (int i = 0; i < n; i++)
+			s2 += alphas[i] * data.y[i] * gradient[i];
+		score = s1 - (0.5 * s2);
+	}
 
-		for(int i = 0; i < count; i++) {
-			double ai = alphas[i];
-			if(ai < svm.epsilon) {
-				continue;
+	private Callable<Candidate> evaluator(SplittableRandom random, int count) {
+		final Candidate best = new Candidate();
+		final Candidate candidate = new Candidate();
+		return () -> {
+			best.gain = Double.NEGATIVE_INFINITY;
+			for (int c = 0; c < count; c++) {
+				if (this.mutate(candidate, random) && candidate.gain > best.gain)
+					best.copyFrom(candidate);
 			}
-			s1 += ai;
-			FeatureVector vi = svm.vectors.get(i);
-			for(int j = 0; j < count; j++) {
-				double aj = alphas[j];
-				if(aj < svm.epsilon) {
-					continue;
-				}
-				FeatureVector vj = svm.vectors.get(j);
-				s2 += (ai * aj * vi.y * vj.y * svm.kernel.apply(vi.x, vj.x));
+			return best;
+		};
+	}
+
+	// fills the candidate with a random mutation, returns false if it violates alpha >= 0
+	private boolean mutate(Candidate candidate, SplittableRandom random) {
+		final int n = data.size;
+		final int[] indices = candidate.indices;
+		final double[] deltas = candidate.deltas;
+
+		double sum = 0;
+		for (int m = 0; m <= mutationCount; m++) {
+			int k;
+			do {
+				k = random.nextInt(n);
+			} while (contains(indices, m, k));
+			indices[m] = k;
+			if (m < mutationCount) {
+				deltas[m] = this.offsetRandomly(alphas[k], random) - alphas[k];
+				sum += deltas[m] * data.y[k];
 			}
 		}
+		final int r = indices[mutationCount];
+		deltas[mutationCount] = -sum * data.y[r];
+		if (alphas[r] + deltas[mutationCount] < 0)
+			return false;
 
-		AlphaSet set = new AlphaSet();
-		set.alphas = alphas;
-		set.score = s1 - (0.5 * s2);
-		return set;
+		// change of the objective, O(mutations^2) thanks to the gradient
+		double gain = 0;
+		for (int m = 0; m <= mutationCount; m++) {
+			final int k = indices[m];
+			final double dk = deltas[m] * data.y[k];
+			gain += deltas[m] - dk * gradient[k];
+			for (int l = 0; l <= mutationCount; l++)
+				gain -= 0.5 * dk * deltas[l] * data.y[indices[l]] * this.kernel(k, indices[l]);
+		}
+		candidate.gain = gain;
+		return true;
 	}
 
-	private double offsetRandomly(double alpha) {
-		double offset = Math.random() * delta;
-		if (Math.random()<0.5) offset *= -1;
+	private double offsetRandomly(double alpha, SplittableRandom random) {
+		double offset = random.nextDouble() * delta;
+		if (random.nextBoolean()) offset *= -1;
 		double newAlpha = alpha - offset;
 		if (newAlpha < svm.epsilon) {
 			return 0;
@@ -101,9 +260,36 @@ public class ESZ implements Solver { ;
 		}
 	}
 
-	private void apply(AlphaSet set) {
-		for (int i = 0; i < svm.vectors.size(); i++) {
-			svm.vectors.get(i).alpha = set.alphas[i];
+	private void accept(Candidate candidate) {
+		final int n = data.size;
+		for (int m = 0; m <= mutationCount; m++) {
+			final int k = candidate.indices[m];
+			alphas[k] += candidate.deltas[m];
+			final double coefficient = candidate.deltas[m] * data.y[k];
+			if (matrix != null) {
+				matrix.copyRow(k, row);
+				for (int i = 0; i < n; i++)
+					gradient[i] += coefficient * row[i];
+			} else {
+				for (int i = 0; i < n; i++)
+					gradient[i] += coefficient * this.kernel(k, i);
+			}
 		}
+		score += candidate.gain;
+	}
+
+	private Candidate get(Future<Candidate> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++)
+			if (values[i] == value)
+				return true;
+		return false;
 	}
 }
@@ -0,0 +1,29 @@
+package sample.solvers;
+
+// maximal violating pair (Keerthi et al.), using first order information only
+public class FirstOrderSelection implements WorkingSetSelection {
+
+    public boolean select(SMO smo, int[] pair) {
+        // -y*grad(f) equals -E up to a constant, so the errors can be used directly
+        final double[] errors = smo.errorCache;
+        double maxUp = Double.NEGATIVE_INFINITY;
+        double minLow = Double.POSITIVE_INFINITY;
+        int i = -1, j = -1;
+        for (int k = 0; k < smo.activeSize; k++) {
+            final int t = smo.active[k];
+            if (smo.inUpSet(t) && -errors[t] > maxUp) {
+                maxUp = -errors[t];
+                i = t;
+            }
+            if (smo.inLowSet(t) && -errors[t] < minLow) {
+                minLow = -errors[t];
+                j = t;
+            }
+        }
+        if (i < 0 || j < 0 || maxUp - minLow < smo.tolerance)
+            return false;
+        pair[0] = i;
+        pair[1] = j;
+        return true;
+    }
+}
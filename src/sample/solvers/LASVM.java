@@ -0,0 +1,269 @@
+package sample.solvers;
+
+import sample.FeatureVector;
+import sample.Model;
+import sample.kernels.Kernel;
+
+/**
+ * Online kernel SVM after LASVM (Bordes et al. 2005) with a budget on the
+ * number of support vectors. Each row is first processed: if it violates
+ * the optimality conditions together with a support vector it is added and
+ * the pair is optimised, otherwise it is dropped. Then one reprocess step
+ * optimises the most violating pair and removes blatant non support vectors.
+ * When the budget is exceeded a support vector is removed according to the
+ * removal policy and its coefficient is moved to the most similar support
+ * vectors of its class that have room for it, so sum(alpha_i * y_i) = 0
+ * keeps holding unless all of them are at the bound.
+ * Memory is bounded by the budget: the support vectors, their gradients and
+ * the kernel matrix between them. Each row costs O(budget) kernel evaluations.
+ */
+public class LASVM implements OnlineLearner {
+
+    // OLDEST keeps a sliding window, which also follows drifting data. SMALLEST_COEFFICIENT keeps
+    // the most influential vectors, but on overlapping classes the budget fills up with vectors at
+    // the bound and new rows are dropped again right away, so it only suits nearly separable data.
+    public enum Removal { OLDEST, SMALLEST_COEFFICIENT }
+
+    private static final double TAU = 1e-12;
+
+    private final Kernel kernel;
+    private final int dimension;
+    private final double c;
+    private final int budget;
+    private Removal removal = Removal.OLDEST;
+    private double tolerance = 1e-3;
+
+    // one slot per support vector, slots [0, size) are used, one spare for the row being processed
+    private final double[] points; // row-major
+    private final double[] coefficients; // alpha * y, between min(0, c*y) and max(0, c*y)
+    private final byte[] y;
+    private final double[] gradients; // y_i - sum_j coefficient_j * K(i,j)
+    private final long[] arrivals; // row count when added, for Removal.OLDEST
+    private final double[][] kernelRows;
+    private int size = 0;
+
+    private double b = 0;
+    private long count = 0;
+    private Model model; // cached until the next update
+
+    public LASVM(Kernel kernel, int dimension, double c, int budget) {
+        if (budget < 2)
+            throw new IllegalArgumentException("budget must allow at least two support vectors");
+        this.kernel = kernel;
+        this.dimension = dimension;
+        this.c = c;
+        this.budget = budget;
+        final int slots = budget + 1;
+        this.points = new double[slots * dimension];
+        this.coefficients = new double[slots];
+        this.y = new byte[slots];
+        this.gradients = new double[slots];
+        this.arrivals = new long[slots];
+        this.kernelRows = new double[slots][slots];
+    }
+
+    public synchronized void setRemoval(Removal removal) {
+        this.removal = removal;
+    }
+
+    public synchronized void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public synchronized void learn(FeatureVector row) {
+        count++;
+        this.process(row.x, row.y);
+        this.reprocess();
+        if (size > budget)
+            this.removeOverBudget();
+        model = null;
+    }
+
+    private void process(double[] x, int label) {
+        // kernel values against the support vectors go into the spare slot
+        final int k = size;
+        final double[] rowK = kernelRows[k];
+        double gradient = label;
+        for (int s = 0; s < size; s++) {
+            final double value = kernel.apply(points, s * dimension, x, 0, dimension);
+            rowK[s] = value;
+            kernelRows[s][k] = value;
+            gradient -= coefficients[s] * value;
+        }
+        rowK[k] = kernel.apply(x, 0, x, 0, dimension);
+
+        // a positive row can only increase its coefficient, a negative one only decrease it
+        int partner = -1;
+        for (int s = 0; s < size; s++) {
+            if (label > 0 ? coefficients[s] > this.lower(s) && (partner < 0 || gradients[s] < gradients[partner])
+                    : coefficients[s] < this.upper(s) && (partner < 0 || gradients[s] > gradients[partner]))
+                partner = s;
+        }
+        if (partner >= 0 && (label > 0 ? gradient - gradients[partner] : gradients[partner] - gradient) <= tolerance)
+            return; // satisfies the optimality conditions with a zero coefficient
+
+        System.arraycopy(x, 0, points, k * dimension, dimension);
+        coefficients[k] = 0;
+        y[k] = (byte) label;
+        gradients[k] = gradient;
+        arrivals[k] = count;
+        size++;
+        if (partner >= 0) {
+            if (label > 0)
+                this.step(k, partner);
+            else
+                this.step(partner, k);
+        }
+    }
+
+    // one step on the most violating pair, then removes blatant non support vectors and updates b
+    private void reprocess() {
+        int i = this.maxGradient(), j = this.minGradient();
+        if (i >= 0 && j >= 0 && gradients[i] - gradients[j] > tolerance) {
+            this.step(i, j);
+            i = this.maxGradient();
+            j = this.minGradient();
+        }
+        if (i < 0 || j < 0)
+            return;
+        final double gMax = gradients[i], gMin = gradients[j];
+        for (int s = size - 1; s >= 0; s--) {
+            if (coefficients[s] == 0 && (y[s] < 0 ? gradients[s] >= gMax : gradients[s] <= gMin))
+                this.remove(s);
+        }
+        b = (gMax + gMin) / 2;
+    }
+
+    // moves coefficient from j to i, clipped to the box of both
+    private void step(int i, int j) {
+        final double[] rowI = kernelRows[i], rowJ = kernelRows[j];
+        double curvature = rowI[i] + rowJ[j] - 2 * rowI[j];
+        if (curvature <= 0)
+            curvature = TAU;
+        double lambda = (gradients[i] - gradients[j]) / curvature;
+        lambda = Math.min(lambda, Math.min(this.upper(i) - coefficients[i], coefficients[j] - this.lower(j)));
+        if (lambda <= 0)
+            return;
+        coefficients[i] += lambda;
+        coefficients[j] -= lambda;
+        for (int s = 0; s < size; s++)
+            gradients[s] -= lambda * (rowI[s] - rowJ[s]);
+    }
+
+    // the slot with the largest gradient whose coefficient may increase, -1 if none
+    private int maxGradient() {
+        int best = -1;
+        for (int s = 0; s < size; s++)
+            if (coefficients[s] < this.upper(s) && (best < 0 || gradients[s] > gradients[best]))
+                best = s;
+        return best;
+    }
+
+    // the slot with the smallest gradient whose coefficient may decrease, -1 if none
+    private int minGradient() {
+        int best = -1;
+        for (int s = 0; s < size; s++)
+            if (coefficients[s] > this.lower(s) && (best < 0 || gradients[s] < gradients[best]))
+                best = s;
+        return best;
+    }
+
+    private double lower(int s) {
+        return y[s] > 0 ? 0 : -c;
+    }
+
+    private double upper(int s) {
+        return y[s] > 0 ? c : 0;
+    }
+
+    private void removeOverBudget() {
+        int victim = 0;
+        for (int s = 1; s < size; s++) {
+            final boolean better = removal == Removal.OLDEST
+                    ? arrivals[s] < arrivals[victim]
+                    : Math.abs(coefficients[s]) < Math.abs(coefficients[victim])
+                            || (Math.abs(coefficients[s]) == Math.abs(coefficients[victim]) && arrivals[s] < arrivals[victim]);
+            if (better)
+                victim = s;
+        }
+        final double coefficient = coefficients[victim];
+        if (coefficient != 0) {
+            final double[] rowV = kernelRows[victim];
+            for (int s = 0; s < size; s++)
+                gradients[s] += coefficient * rowV[s];
+            // the most similar support vectors of the same class take over what fits into their boxes
+            coefficients[victim] = 0;
+            double remaining = coefficient;
+            while (remaining != 0) {
+                int heir = -1;
+                for (int s = 0; s < size; s++)
+                    if (s != victim && y[s] == y[victim] && (remaining > 0 ? coefficients[s] < this.upper(s) : coefficients[s] > this.lower(s))
+                            && (heir < 0 || rowV[s] > rowV[heir]))
+                        heir = s;
+                if (heir < 0)
+                    break;
+                final double moved = remaining > 0
+                        ? Math.min(remaining, this.upper(heir) - coefficients[heir])
+                        : Math.max(remaining, this.lower(heir) - coefficients[heir]);
+                coefficients[heir] += moved;
+                remaining -= moved;
+                final double[] rowH = kernelRows[heir];
+                for (int s = 0; s < size; s++)
+                    gradients[s] -= moved * rowH[s];
+            }
+        }
+        this.remove(victim);
+    }
+
+    // moves the last slot into slot r
+    private void remove(int r) {
+        final int last = --size;
+        if (r != last) {
+            System.arraycopy(points, last * dimension, points, r * dimension, dimension);
+            coefficients[r] = coefficients[last];
+            y[r] = y[last];
+            gradients[r] = gradients[last];
+            arrivals[r] = arrivals[last];
+            final double[] row = kernelRows[r];
+            kernelRows[r] = kernelRows[last];
+            kernelRows[last] = row;
+            for (int s = 0; s < size; s++)
+                kernelRows[s][r] = kernelRows[s][last];
+        }
+    }
+
+    public synchronized Model getModel() {
+        if (model == null) {
+            int count = 0;
+            for (int s = 0; s < size; s++)
+                if (coefficients[s] != 0)
+                    count++;
+            double[] modelCoefficients = new double[count];
+            double[] supportVectors = new double[count * dimension];
+            int k = 0;
+            for (int s = 0; s < size; s++) {
+                if (coefficients[s] == 0)
+                    continue;
+                modelCoefficients[k] = coefficients[s];
+                System.arraycopy(points, s * dimension, supportVectors, k * dimension, dimension);
+                k++;
+            }
+            model = new Model(kernel, dimension, modelCoefficients, supportVectors, b);
+        }
+        return model;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    // support vectors currently held, including ones whose coefficient is still zero
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LASVM[" + size + "/" + budget + " support vectors, " + count + " rows, b " + b + "]";
+    }
+}
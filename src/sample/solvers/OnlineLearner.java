@@ -0,0 +1,27 @@
+package sample.solvers;
+
+import sample.FeatureVector;
+import sample.Model;
+
+import java.util.Iterator;
+
+/**
+ * Trains from one row at a time in bounded memory, for data that does not
+ * fit into a TrainingSet. Implementations are thread-safe, so the current
+ * model can be used for prediction while updates continue on another thread.
+ */
+public interface OnlineLearner {
+
+    void learn(FeatureVector row);
+
+    default void learn(Iterator<? extends FeatureVector> rows) {
+        while (rows.hasNext())
+            this.learn(rows.next());
+    }
+
+    // snapshot of the current solution, unaffected by later updates
+    Model getModel();
+
+    // rows learned so far
+    long getCount();
+}
@@ -0,0 +1,77 @@
+package sample.solvers;
+
+import sample.FeatureVector;
+import sample.Model;
+import sample.kernels.DotProductKernel;
+
+/**
+ * Pegasos (Shalev-Shwartz et al. 2007), stochastic sub-gradient descent on
+ * the primal of the linear SVM with step size 1 / (lambda * t), followed by
+ * a projection onto the ball of radius 1 / sqrt(lambda) that contains the
+ * optimum. An update costs O(d) and the state is just w, so rows can be
+ * streamed. As in DualCoordinateDescent, b is the weight of a constant
+ * feature. lambda corresponds to 1 / (C * n) of the batch problem.
+ */
+public class Pegasos implements OnlineLearner {
+
+    private static final double BIAS = 1; // value of the constant feature
+
+    private final int dimension;
+    private final double lambda;
+    private final double[] w;
+    private double wb;
+    private long count = 0;
+    private Model model; // cached until the next update
+
+    public Pegasos(int dimension, double lambda) {
+        this.dimension = dimension;
+        this.lambda = lambda;
+        this.w = new double[dimension];
+    }
+
+    public synchronized void learn(FeatureVector row) {
+        final double[] x = row.x;
+        final int y = row.y;
+        count++;
+        final double eta = 1 / (lambda * count);
+        double u = wb * BIAS;
+        for (int k = 0; k < dimension; k++)
+            u += w[k] * x[k];
+
+        // shrink by the regularizer, then step along the hinge loss if the row is inside the margin
+        final double scale = 1 - eta * lambda;
+        double squaredNorm = 0;
+        if (y * u < 1) {
+            for (int k = 0; k < dimension; k++) {
+                w[k] = scale * w[k] + eta * y * x[k];
+                squaredNorm += w[k] * w[k];
+            }
+            wb = scale * wb + eta * y * BIAS;
+        } else {
+            for (int k = 0; k < dimension; k++) {
+                w[k] *= scale;
+                squaredNorm += w[k] * w[k];
+            }
+            wb *= scale;
+        }
+        squaredNorm += wb * wb;
+
+        if (squaredNorm * lambda > 1) {
+            final double projection = 1 / Math.sqrt(squaredNorm * lambda);
+            for (int k = 0; k < dimension; k++)
+                w[k] *= projection;
+            wb *= projection;
+        }
+        model = null;
+    }
+
+    public synchronized Model getModel() {
+        if (model == null)
+            model = new Model(new DotProductKernel(), dimension, new double[] {1}, w.clone(), wb * BIAS);
+        return model;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+}
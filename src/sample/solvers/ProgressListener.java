@@ -0,0 +1,15 @@
+package sample.solvers;
+
+/**
+ * Receives progress reports while a solver runs. Reports are made from the
+ * solving thread between steps, so the alphas of the SVM being solved hold a
+ * valid intermediate solution for the duration of the call.
+ */
+public interface ProgressListener {
+    /**
+     * @param round      passes over the data (SMO) or generations (ESZ) so far
+     * @param violations vectors violating the KKT conditions, -1 if not known
+     * @param score      the dual objective of the current solution, NaN if not known
+     */
+    void progress(long round, long violations, double score);
+}
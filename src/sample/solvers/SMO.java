@@ -1,40 +1,162 @@
 package sample.solvers;
 
-import sample.FeatureVector;
 import sample.SVM;
+import sample.TrainingSet;
+import sample.kernels.KernelCache;
 
 import java.util.*;
 
 public class SMO implements Solver {
 
     private final boolean USE_CACHE = true;
-    private final boolean DEBUG_PRINT = true;
+    private boolean debugPrint = false; // progress lines on stdout, for interactive use
 
-    private static final Random random = new Random();
+    private static final double ROUNDOFF = 1e-8;
+    private static final double TAU = 1e-12; // curvature used for pairs with eta <= 0 (as in libsvm)
 
-    private double c;
-    private double tolerance = 1e-3;
+    private final Random random = new Random();
+
+    final double c;
+    final double tolerance = 1e-3;
     private SVM svm;
+    TrainingSet data;
+    double[] alphas;
+    KernelCache kernelCache;
+    private BitSet unboundVectors = new BitSet();
+    double[] errorCache;
+
+    // indices of the vectors that are still optimised, the shrunk ones follow
+    int[] active;
+    int activeSize;
+
+    private WorkingSetSelection selection; // null for Platt's heuristics
+    private boolean shrinking = false;
+    private long rounds; // passes over the data, or steps when using a selection
+    private long maxIterations = 0; // steps when using a selection, 0 for max(10000000, 100 * n)
+    private boolean converged;
 
-    private Set<FeatureVector> unboundVectors = new HashSet<>();
-    private Map<FeatureVector,Double> errorCache = new HashMap<>();
+    private SolverMetrics metrics; // null unless instrumented
+    private ProgressListener progressListener;
+    private volatile boolean cancelled = false;
+    private long violations; // KKT violations found in the current round
 
     public SMO(double c) {
         this.c = c;
     }
 
+    public SMO(double c, WorkingSetSelection selection) {
+        this.c = c;
+        this.selection = selection;
+    }
+
+    public void setSelection(WorkingSetSelection selection) {
+        this.selection = selection;
+    }
+
+    public void setDebugPrint(boolean debugPrint) {
+        this.debugPrint = debugPrint;
+    }
+
+    public void setMaxIterations(long maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    // false if the last solve stopped at maxIterations (or was cancelled) before reaching the tolerance
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    // every step keeps the alphas feasible and increases the objective, so the current ones are the best
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void setShrinking(boolean shrinking) {
+        this.shrinking = shrinking;
+    }
+
     public void solve(SVM svm) {
         this.svm = svm;
+        this.data = svm.data;
+        this.alphas = svm.alphas;
+        if (metrics != null)
+            metrics.start();
+        long phaseStart = System.nanoTime();
+        final long evaluations = svm.getKernelEvaluations();
+        this.kernelCache = svm.getKernelCache(); // computes the kernel matrix if it fits into svm.matrixSize
+        final long hits = kernelCache.getHits(), misses = kernelCache.getMisses();
+        // continue from the alphas already on the SVM, e.g. seeded with SVM.warmStart
+        svm.repairAlphas(c);
+        this.unboundVectors.clear();
+        for (int i = 0; i < alphas.length; i++) {
+            alphas[i] = this.snapToBound(alphas[i]);
+            if (!alphaAtBound(alphas[i]))
+                unboundVectors.set(i);
+        }
+        this.resetActiveSet();
+        if (USE_CACHE || selection != null)
+            initErrorCache();
+        if (metrics != null) {
+            metrics.addPhase("initialization", System.nanoTime() - phaseStart);
+            phaseStart = System.nanoTime();
+        }
+        if (selection == null)
+            solveWithHeuristics();
+        else
+            solveWithSelection();
+        this.finishThreshold();
+        if (metrics != null) {
+            metrics.addPhase("optimization", System.nanoTime() - phaseStart);
+            metrics.converged = converged;
+            metrics.addKernelCounts(svm.getKernelEvaluations() - evaluations,
+                    kernelCache.getHits() - hits, kernelCache.getMisses() - misses);
+        }
+    }
+
+    private void solveWithHeuristics() {
+        final int n = data.size;
         long start = System.currentTimeMillis();
-        int rounds = 0;
+        rounds = 0;
         int numChanged = 0;
         boolean examineAll = true; // examine entire training set initially
-        while(numChanged > 0 || examineAll) {
+        boolean unshrunk = false;
+        boolean verifying = false; // examining the shrunk vectors again, so do not shrink
+        converged = false;
+        while((numChanged > 0 || examineAll) && !cancelled) {
+            if (shrinking && !verifying) {
+                long shrinkStart = metrics != null ? System.nanoTime() : 0;
+                unshrunk = shrink(unshrunk);
+                if (metrics != null)
+                    metrics.addPhase("shrinking", System.nanoTime() - shrinkStart);
+            }
             numChanged = 0;
-            for(FeatureVector v : svm.vectors)
-                if((examineAll || isUnbound(v)) && examineExample(v))
+            violations = 0;
+            // the non-bound vectors are never shrunk, so the examined ones are all on the active set
+            for(int k = 0; k < activeSize && !cancelled; k++)
+                if((examineAll || isUnbound(active[k])) && examineExample(active[k]))
                     numChanged++;
-            if(examineAll)
+            verifying = false;
+            if(examineAll && numChanged == 0 && activeSize < n) {
+                // the active set satisfies the KKT conditions, so examine the shrunk vectors again
+                reconstructErrors();
+                resetActiveSet();
+                verifying = true;
+            } else if(examineAll)
                 // only examine non-bound examples in next pass
                 examineAll = false;
             else if(numChanged == 0)
@@ -42,87 +164,321 @@ public class SMO implements Solver {
                 // so examine the entire training set again
                 examineAll = true;
             rounds++;
-            if (DEBUG_PRINT) {
+            if (metrics != null)
+                metrics.roundFinished(rounds, numChanged, violations, this.dualObjective());
+            if (progressListener != null)
+                progressListener.progress(rounds, violations, this.dualObjective());
+            if (debugPrint) {
                 long now = System.currentTimeMillis();
                 long secondsPassed = (now-start)/1000;
-                System.out.println("SEC " + secondsPassed + " ROUND " + rounds + " - CHANGED " + numChanged + " UNBOUND " + unboundVectors.size());
+                System.out.println("SEC " + secondsPassed + " ROUND " + rounds + " - CHANGED " + numChanged + " UNBOUND " + unboundVectors.cardinality());
             }
         }
+        converged = !cancelled;
+    }
+
+    private void solveWithSelection() {
+        final int n = data.size;
+        final long maxIterations = this.maxIterations > 0 ? this.maxIterations : Math.max(10000000L, 100L * n);
+        long start = System.currentTimeMillis();
+        final int shrinkInterval = Math.max(1, Math.min(n, 1000));
+        int[] pair = new int[2];
+        long iterations = 0;
+        int untilShrink = shrinkInterval;
+        boolean unshrunk = false;
+        converged = false;
+        // one round is as many steps as there are training vectors
+        while (iterations < maxIterations && !cancelled) {
+            iterations++;
+            if (shrinking && --untilShrink == 0) {
+                long shrinkStart = metrics != null ? System.nanoTime() : 0;
+                unshrunk = shrink(unshrunk);
+                untilShrink = shrinkInterval;
+                if (metrics != null)
+                    metrics.addPhase("shrinking", System.nanoTime() - shrinkStart);
+            }
+            if (!selection.select(this, pair)) {
+                // optimal ...
+                if (activeSize == n) {
+                    converged = true;
+                    break;
+                }
+                // ... but maybe only on the active set, so check all vectors again
+                reconstructErrors();
+                resetActiveSet();
+                continue;
+            }
+            if (!takeStep(pair[1], pair[0])) {
+                // cannot happen for a violating pair as eta <= 0 is replaced by TAU, but never report it as optimal
+                System.err.println("WARNING: SMO could not make progress on the violating pair "
+                        + pair[0] + ", " + pair[1] + " after " + iterations + " steps");
+                break;
+            }
+            if (iterations % n == 0)
+                this.reportRound(iterations / n, n);
+            if (debugPrint && iterations % n == 0) {
+                long secondsPassed = (System.currentTimeMillis()-start)/1000;
+                System.out.println("SEC " + secondsPassed + " ROUND " + (iterations / n) + " - STEPS " + iterations + " UNBOUND " + unboundVectors.cardinality() + " ACTIVE " + activeSize);
+            }
+        }
+        rounds = iterations;
+        if (iterations == maxIterations && !converged && !cancelled)
+            System.err.println("WARNING: SMO reached the maximum of " + maxIterations
+                    + " steps, consider standardizing the features, a smaller c or a larger maximum");
+        if (iterations % n != 0)
+            this.reportRound(iterations / n + 1, iterations % n);
+        if (debugPrint)
+            System.out.println("STEPS " + iterations + " UNBOUND " + unboundVectors.cardinality());
+    }
+
+    private void reportRound(long round, long steps) {
+        if (metrics == null && progressListener == null)
+            return;
+        final long violations = this.countViolations();
+        final double objective = this.dualObjective();
+        if (metrics != null)
+            metrics.roundFinished(round, steps, violations, objective);
+        if (progressListener != null)
+            progressListener.progress(round, violations, objective);
+    }
+
+    private void resetActiveSet() {
+        final int n = data.size;
+        if (active == null || active.length != n)
+            active = new int[n];
+        for (int i = 0; i < n; i++)
+            active[i] = i;
+        activeSize = n;
     }
 
-    private boolean examineExample(FeatureVector v) {
-        if(satisfiesKKTConditions(v)) // not eligible for optimisation
+    // removes vectors at a bound that are unlikely to move again (as in libsvm)
+    private boolean shrink(boolean unshrunk) {
+        double maxUp = Double.NEGATIVE_INFINITY;
+        double minLow = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < activeSize; k++) {
+            final int t = active[k];
+            if (inUpSet(t))
+                maxUp = Math.max(maxUp, -errorCache[t]);
+            if (inLowSet(t))
+                minLow = Math.min(minLow, -errorCache[t]);
+        }
+
+        if (!unshrunk && maxUp - minLow <= 10 * tolerance) {
+            // close to the optimum, give all shrunk vectors one more chance
+            unshrunk = true;
+            reconstructErrors();
+            resetActiveSet();
+        }
+
+        for (int k = 0; k < activeSize; k++) {
+            final int t = active[k];
+            final boolean up = inUpSet(t), low = inLowSet(t);
+            final boolean shrinkable = up != low && (up ? -errorCache[t] < minLow : -errorCache[t] > maxUp);
+            if (shrinkable) {
+                activeSize--;
+                active[k] = active[activeSize];
+                active[activeSize] = t;
+                k--;
+            }
+        }
+        return unshrunk;
+    }
+
+    // recomputes the errors of the shrunk vectors, which were not updated
+    private void reconstructErrors() {
+        final int n = data.size;
+        if (activeSize == n)
+            return;
+        for (int k = activeSize; k < n; k++) {
+            final int t = active[k];
+            errorCache[t] = svm.b - data.y[t];
+        }
+        for (int j = 0; j < n; j++) {
+            if (alphas[j] == 0)
+                continue;
+            final double coefficient = alphas[j] * data.y[j];
+            final double[] row = kernelCache.getRow(j, active, activeSize, n);
+            for (int k = activeSize; k < n; k++)
+                errorCache[active[k]] += coefficient * row[active[k]];
+        }
+    }
+
+    // the threshold from the errors in O(n) (as in libsvm): the mean over the unbound vectors, which
+    // all have y*u = 1, or else the middle of the interval allowed by the vectors at a bound
+    private void finishThreshold() {
+        final int n = data.size;
+        reconstructErrors(); // if the solve was cancelled while vectors were shrunk
+        double sum = 0;
+        int free = 0;
+        double upper = Double.POSITIVE_INFINITY, lower = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            final double b = svm.b - errorCache[i]; // makes u_i = y_i
+            if (alphas[i] > 0 && alphas[i] < c) {
+                sum += b;
+                free++;
+            } else if ((alphas[i] == 0) != (data.y[i] > 0)) {
+                upper = Math.min(upper, b); // needs y*u >= 1 (alpha = 0) or <= 1 (alpha = c)
+            } else {
+                lower = Math.max(lower, b);
+            }
+        }
+        double b;
+        if (free > 0)
+            b = sum / free;
+        else if (upper != Double.POSITIVE_INFINITY && lower != Double.NEGATIVE_INFINITY)
+            b = (upper + lower) / 2;
+        else
+            return; // all vectors in one class, keep the maintained threshold
+        final double deltaB = b - svm.b;
+        for (int i = 0; i < n; i++)
+            errorCache[i] += deltaB;
+        svm.b = b;
+    }
+
+    // I_up and I_low of Keerthi et al., the alphas that may increase or decrease along y
+    boolean inUpSet(int i) {
+        return data.y[i] > 0 ? alphas[i] < c : alphas[i] > 0;
+    }
+
+    boolean inLowSet(int i) {
+        return data.y[i] > 0 ? alphas[i] > 0 : alphas[i] < c;
+    }
+
+    private boolean examineExample(int i2) {
+        if(satisfiesKKTConditions(i2)) // not eligible for optimisation
             return false;
+        violations++;
         // choose a vector with the second choice heuristic
-        FeatureVector chosenVector = secondChoice(error(v));
-        if(chosenVector != null && takeStep(chosenVector, v))
+        int chosen = secondChoice(error(i2));
+        if(chosen >= 0 && takeStep(chosen, i2)) {
+            if (metrics != null)
+                metrics.heuristicChoices++;
             return true;
+        }
         // the heuristic did not make positive progress,
-        // so try all non-bound examples
-        final int n = svm.vectors.size();
+        // so try all non-bound examples (of the active set, the shrunk ones have outdated errors)
+        final int n = activeSize;
         final int pos = random.nextInt(n); // iterate from random position
-        for(FeatureVector v1 : svm.vectors.subList(pos, n))
-            if(isUnbound(v) && takeStep(v1, v))
-                return true;
-        for(FeatureVector v1 : svm.vectors.subList(0, pos))
-            if(isUnbound(v) && takeStep(v1, v))
-                return true;
+        for(int k = pos; k < n; k++)
+            if(isUnbound(i2) && takeStep(active[k], i2))
+                return this.chosenByScan(false);
+        for(int k = 0; k < pos; k++)
+            if(isUnbound(i2) && takeStep(active[k], i2))
+                return this.chosenByScan(false);
         // positive progress was not made, so try entire training set
-        for(FeatureVector v1 : svm.vectors.subList(pos, n))
-            if(isBound(v) && takeStep(v1, v))
-                return true;
-        for(FeatureVector v1 : svm.vectors.subList(0, pos))
-            if(isBound(v) && takeStep(v1, v))
-                return true;
+        for(int k = pos; k < n; k++)
+            if(isBound(i2) && takeStep(active[k], i2))
+                return this.chosenByScan(true);
+        for(int k = 0; k < pos; k++)
+            if(isBound(i2) && takeStep(active[k], i2))
+                return this.chosenByScan(true);
         // no adequate second example exists, so pick another first example
+        if (metrics != null)
+            metrics.noChoices++;
         return false;
     }
 
-    private double error(FeatureVector v) {
-        if (USE_CACHE && errorCache.containsKey(v))
-            return errorCache.get(v);
-        return svm.output(v.x) - v.y;
+    private boolean chosenByScan(boolean fullScan) {
+        if (metrics != null) {
+            if (fullScan)
+                metrics.fullScanChoices++;
+            else
+                metrics.unboundScanChoices++;
+        }
+        return true;
+    }
+
+    // W(alpha) = sum alpha_i - 1/2 sum alpha_i y_i (E_i - b + y_i), NaN while vectors are shrunk
+    private double dualObjective() {
+        final int n = data.size;
+        if (errorCache == null || activeSize < n)
+            return Double.NaN; // the errors of shrunk vectors are outdated
+        double objective = 0;
+        for (int i = 0; i < n; i++)
+            if (alphas[i] != 0)
+                objective += alphas[i] - 0.5 * alphas[i] * data.y[i] * (errorCache[i] - svm.b + data.y[i]);
+        return objective;
     }
 
-    private boolean isBound(FeatureVector v) {
-        return !unboundVectors.contains(v);
+    private long countViolations() {
+        long count = 0;
+        for (int k = 0; k < activeSize; k++)
+            if (!satisfiesKKTConditions(active[k]))
+                count++;
+        return count;
     }
 
-    private boolean isUnbound(FeatureVector v) {
-        return unboundVectors.contains(v);
+    private void initErrorCache() {
+        final int n = data.size;
+        errorCache = new double[n];
+        for (int i = 0; i < n; i++)
+            errorCache[i] = svm.b - data.y[i];
+        for (int j = 0; j < n; j++) {
+            if (alphas[j] == 0)
+                continue;
+            final double t = alphas[j] * data.y[j];
+            final double[] row = kernelCache.getRow(j);
+            for (int i = 0; i < n; i++)
+                errorCache[i] += t * row[i];
+        }
     }
 
-    private boolean satisfiesKKTConditions(FeatureVector v) {
-        final double r = error(v) * v.y; // (u-y)*y = y*u-1
-        if (r < -tolerance && v.alpha < c) {
+    private double error(int i) {
+        if (USE_CACHE)
+            return errorCache[i];
+        return svm.output(data.row(i)) - data.y[i];
+    }
+
+    private boolean isBound(int i) {
+        return !unboundVectors.get(i);
+    }
+
+    private boolean isUnbound(int i) {
+        return unboundVectors.get(i);
+    }
+
+    private boolean satisfiesKKTConditions(int i) {
+        final double r = error(i) * data.y[i]; // (u-y)*y = y*u-1
+        if (r < -tolerance && alphas[i] < c) {
             return false;
-        } else if (r > tolerance && v.alpha > 0) {
+        } else if (r > tolerance && alphas[i] > 0) {
             return false;
         } else {
             return true;
         }
     }
 
-    private FeatureVector secondChoice(double error) {
+    private int secondChoice(double error) {
         double bestError = error;
-        FeatureVector bestVector = null;
-        for (FeatureVector v: unboundVectors) {
-            double otherError = error(v);
-            if ( bestVector == null || (error > 0 && otherError < bestError) || (error < 0 && otherError > bestError)) {
-                bestVector = v;
+        int best = -1;
+        for (int i = unboundVectors.nextSetBit(0); i >= 0; i = unboundVectors.nextSetBit(i + 1)) {
+            double otherError = error(i);
+            if ( best < 0 || (error > 0 && otherError < bestError) || (error < 0 && otherError > bestError)) {
+                best = i;
                 bestError = otherError;
             }
         }
-        return bestVector;
+        return best;
     }
 
-    private boolean takeStep(FeatureVector v1, FeatureVector v2) {
-        if(v1.x == v2.x)
+    private boolean takeStep(int i1, int i2) {
+        final boolean success = this.step(i1, i2);
+        if (metrics != null) {
+            if (success)
+                metrics.successfulSteps++;
+            else
+                metrics.failedSteps++;
+        }
+        return success;
+    }
+
+    private boolean step(int i1, int i2) {
+        if(i1 == i2)
             // identical inputs cause objective function to become
             // semi-definite, so positive progress cannot be made
             return false;
-        final double alpha1 = v1.alpha, alpha2 = v2.alpha;
-        final double y1 = v1.y, y2 = v2.y;
+        final double alpha1 = alphas[i1], alpha2 = alphas[i2];
+        final double y1 = data.y[i1], y2 = data.y[i2];
 
         // endpoints (in terms of values of alpha2) of the diagonal line
         // segment representing the constraint between the two alpha values
@@ -131,7 +487,7 @@ public class SMO implements Solver {
             // equation (12.3)
             l = Math.max(0, alpha2 - alpha1);
             h = Math.min(c, c + alpha2 - alpha1);
-        } else /* v1.y == v2.y */ {
+        } else /* y1 == y2 */ {
             // equation (12.4)
             l = Math.max(0, alpha2 + alpha1 - c);
             h = Math.min(c, alpha2 + alpha1);
@@ -139,51 +495,84 @@ public class SMO implements Solver {
         if(l == h) // the alpha values are constrained to a single point
             return false;
 
-        final double k11 = svm.kernel.apply(v1.x, v1.x),
-                k12 = svm.kernel.apply(v1.x, v2.x),
-                k22 = svm.kernel.apply(v2.x, v2.x);
+        final double k11 = kernelCache.diagonal(i1),
+                k12 = kernelCache.get(i1, i2),
+                k22 = kernelCache.diagonal(i2);
         final double s = y1 * y2;
-        final double e1 = error(v1), e2 = error(v2);
+        final double e1 = error(i1), e2 = error(i2);
 
         // second derivative of the objective function along the diagonal line
-        final double eta = k11 + k22 - 2*k12; // equation (12.5)
-        // unusual circumstances
-        if(eta < 0)
-            throw new RuntimeException(
-                    "The kernel function does not obey Mercer's condition");
+        double eta = k11 + k22 - 2*k12; // equation (12.5)
+        if(eta <= 0 && selection != null)
+            // the selection already chose the pair with eta replaced by TAU, step along it (as in libsvm)
+            eta = TAU;
         if(eta == 0) // two training examples have the same input vector
             return false;
-        // normal circumstances - the objective function is positive
-        // definite and there is a minimum along the diagonal line
-        v2.alpha = alpha2 + y2 * (e1-e2) / eta; // equation (12.6)
-        v2.alpha = this.clamp(v2.alpha, l, h); // equation (12.7)
+        double a2;
+        if(eta > 0) {
+            // normal circumstances - the objective function is positive
+            // definite and there is a minimum along the diagonal line
+            a2 = alpha2 + y2 * (e1-e2) / eta; // equation (12.6)
+            a2 = this.clamp(a2, l, h); // equation (12.7)
+        } else {
+            // unusual circumstances - the kernel does not obey Mercer's condition
+            // (e.g. sigmoid), so the minimum is at one of the ends of the line segment
+            final double f1 = y1 * (e1 - svm.b) - alpha1 * k11 - s * alpha2 * k12;
+            final double f2 = y2 * (e2 - svm.b) - s * alpha1 * k12 - alpha2 * k22;
+            final double l1 = alpha1 + s * (alpha2 - l);
+            final double h1 = alpha1 + s * (alpha2 - h);
+            final double lObj = l1 * f1 + l * f2 + 0.5 * l1 * l1 * k11 + 0.5 * l * l * k22 + s * l * l1 * k12;
+            final double hObj = h1 * f1 + h * f2 + 0.5 * h1 * h1 * k11 + 0.5 * h * h * k22 + s * h * h1 * k12;
+            if(lObj < hObj - svm.epsilon)
+                a2 = l;
+            else if(lObj > hObj + svm.epsilon)
+                a2 = h;
+            else
+                a2 = alpha2;
+        }
+        final double snapped = this.snapToBound(a2);
+        // a violating pair must move, so only snap if that keeps a change
+        if (selection == null || snapped != alpha2)
+            a2 = snapped;
 
-        double delta = Math.abs(v2.alpha - alpha2);
-        if(delta < svm.epsilon*(v2.alpha+alpha2+svm.epsilon)) {
+        double delta = Math.abs(a2 - alpha2);
+        // the selection already picked the most violating pair, so any change helps
+        double minDelta = selection == null ? svm.epsilon*(a2+alpha2+svm.epsilon) : Double.MIN_VALUE;
+        if(delta < minDelta) {
             // change in alpha2 was too small
-            v2.alpha = alpha2;
             return false;
         }
 
-        v1.alpha = alpha1 + s*(alpha2-v2.alpha); // equation (12.8)
+        final double a1 = this.snapToBound(alpha1 + s*(alpha2-a2)); // equation (12.8)
+        alphas[i1] = a1;
+        alphas[i2] = a2;
 
-        if(alphaAtBound(v1.alpha))
-            unboundVectors.remove(v1);
-        else
-            unboundVectors.add(v1);
+        unboundVectors.set(i1, !alphaAtBound(a1));
+        unboundVectors.set(i2, !alphaAtBound(a2));
 
-        if(alphaAtBound(v2.alpha))
-            unboundVectors.remove(v2);
+        // threshold that makes the error of an unbound alpha zero (Platt's b1 and b2, with u = w*x + b),
+        // if both are at a bound every threshold between b1 and b2 satisfies the KKT conditions
+        final double t1 = y1 * (a1 - alpha1);
+        final double t2 = y2 * (a2 - alpha2);
+        final double b1 = svm.b - e1 - t1 * k11 - t2 * k12;
+        final double b2 = svm.b - e2 - t1 * k12 - t2 * k22;
+        final double newB;
+        if (a1 > 0 && a1 < c)
+            newB = b1;
+        else if (a2 > 0 && a2 < c)
+            newB = b2;
         else
-            unboundVectors.add(v2);
-
-        // NOTE: no treshold update
+            newB = (b1 + b2) / 2;
+        final double deltaB = newB - svm.b;
+        svm.b = newB;
 
-        // update error cache
+        // update error cache incrementally, O(n) instead of O(n*|SV|)
         if (USE_CACHE) {
-            for(FeatureVector v : svm.vectors) {
-                double error = svm.output(v.x) - v.y;
-                errorCache.put(v, error);
+            final double[] row1 = kernelCache.getRow(i1, active, 0, activeSize);
+            final double[] row2 = kernelCache.getRow(i2, active, 0, activeSize);
+            for(int k = 0; k < activeSize; k++) {
+                final int i = active[k];
+                errorCache[i] += t1 * row1[i] + t2 * row2[i] + deltaB;
             }
         }
 
@@ -194,6 +583,15 @@ public class SMO implements Solver {
         return ( alpha < tolerance ) || ( alpha > c - tolerance );
     }
 
+    // removes round-off so that alphas at a bound are exactly 0 or c
+    private double snapToBound(double alpha) {
+        if (alpha < ROUNDOFF)
+            return 0;
+        if (alpha > c - ROUNDOFF)
+            return c;
+        return alpha;
+    }
+
     double clamp(double x, double low, double high) {
         return Math.min(Math.max(x, low), high);
     }
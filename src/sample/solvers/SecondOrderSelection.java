@@ -0,0 +1,56 @@
+package sample.solvers;
+
+import sample.kernels.KernelCache;
+
+// working set selection using second order information (Fan, Chen, Lin 2005), as in libsvm
+public class SecondOrderSelection implements WorkingSetSelection {
+
+    private static final double TAU = 1e-12;
+
+    public boolean select(SMO smo, int[] pair) {
+        // -y*grad(f) equals -E up to a constant, so the errors can be used directly
+        final double[] errors = smo.errorCache;
+        final KernelCache kernelCache = smo.kernelCache;
+
+        double maxUp = Double.NEGATIVE_INFINITY;
+        int i = -1;
+        for (int k = 0; k < smo.activeSize; k++) {
+            final int t = smo.active[k];
+            if (smo.inUpSet(t) && -errors[t] > maxUp) {
+                maxUp = -errors[t];
+                i = t;
+            }
+        }
+        if (i < 0)
+            return false;
+
+        final double[] rowI = kernelCache.getRow(i, smo.active, 0, smo.activeSize);
+        final double kii = kernelCache.diagonal(i);
+        double minLow = Double.POSITIVE_INFINITY;
+        double bestObjective = Double.POSITIVE_INFINITY;
+        int j = -1;
+        for (int k = 0; k < smo.activeSize; k++) {
+            final int t = smo.active[k];
+            if (!smo.inLowSet(t))
+                continue;
+            if (-errors[t] < minLow)
+                minLow = -errors[t];
+            final double b = maxUp + errors[t];
+            if (b > 0) {
+                double a = kii + kernelCache.diagonal(t) - 2 * rowI[t];
+                if (a <= 0)
+                    a = TAU;
+                final double objective = -(b * b) / a;
+                if (objective < bestObjective) {
+                    bestObjective = objective;
+                    j = t;
+                }
+            }
+        }
+        if (j < 0 || maxUp - minLow < smo.tolerance)
+            return false;
+        pair[0] = i;
+        pair[1] = j;
+        return true;
+    }
+}
@@ -4,4 +4,16 @@ import sample.SVM;
 
 public interface Solver {
     void solve(SVM svm);
+
+    // optional instrumentation, null disables it
+    default void setMetrics(SolverMetrics metrics) {
+    }
+
+    // optional progress reports, null disables them
+    default void setProgressListener(ProgressListener listener) {
+    }
+
+    // asks a running solve (on another thread) to stop, the alphas then hold the best solution so far
+    default void cancel() {
+    }
 }
@@ -0,0 +1,152 @@
+package sample.solvers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counters and a per round trace filled in by a solver during solve(SVM).
+ * Solvers only touch it when one is set, so leaving the hooks in costs a
+ * null check. The counters are not thread-safe, use one instance per solve.
+ */
+public class SolverMetrics {
+
+    public static class Round {
+        public final long index;
+        public final long changed; // alphas changed (SMO) or candidates accepted (ESZ)
+        public final long kktViolations; // -1 if not known
+        public final double objective; // dual objective, NaN if not known
+        public final long elapsedMillis;
+
+        Round(long index, long changed, long kktViolations, double objective, long elapsedMillis) {
+            this.index = index;
+            this.changed = changed;
+            this.kktViolations = kktViolations;
+            this.objective = objective;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "ROUND " + index + " CHANGED " + changed + " VIOLATIONS " + kktViolations
+                    + " OBJECTIVE " + objective + " MS " + elapsedMillis;
+        }
+    }
+
+    public interface Listener {
+        void roundFinished(SolverMetrics metrics, Round round);
+    }
+
+    long kernelEvaluations;
+    long kernelCacheHits;
+    long kernelCacheMisses;
+    long successfulSteps;
+    long failedSteps;
+    // which stage of Platt's examineExample made progress
+    long heuristicChoices;
+    long unboundScanChoices;
+    long fullScanChoices;
+    long noChoices;
+    boolean converged = true; // false if the solver stopped at an iteration limit
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final List<Round> rounds = new ArrayList<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private long start = System.nanoTime();
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void start() {
+        start = System.nanoTime();
+    }
+
+    void addPhase(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    void addKernelCounts(long evaluations, long hits, long misses) {
+        kernelEvaluations += evaluations;
+        kernelCacheHits += hits;
+        kernelCacheMisses += misses;
+    }
+
+    void roundFinished(long index, long changed, long kktViolations, double objective) {
+        Round round = new Round(index, changed, kktViolations, objective, (System.nanoTime() - start) / 1000000);
+        rounds.add(round);
+        for (Listener listener : listeners)
+            listener.roundFinished(this, round);
+    }
+
+    public long getKernelEvaluations() {
+        return kernelEvaluations;
+    }
+
+    public long getKernelCacheHits() {
+        return kernelCacheHits;
+    }
+
+    public long getKernelCacheMisses() {
+        return kernelCacheMisses;
+    }
+
+    public long getSuccessfulSteps() {
+        return successfulSteps;
+    }
+
+    public long getFailedSteps() {
+        return failedSteps;
+    }
+
+    public long getHeuristicChoices() {
+        return heuristicChoices;
+    }
+
+    public long getUnboundScanChoices() {
+        return unboundScanChoices;
+    }
+
+    public long getFullScanChoices() {
+        return fullScanChoices;
+    }
+
+    public long getNoChoices() {
+        return noChoices;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public Map<String, Long> getPhaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+
+    public List<Round> getRounds() {
+        return Collections.unmodifiableList(rounds);
+    }
+
+    // flat name/value pairs, e.g. for export to a monitoring system
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new LinkedHashMap<>();
+        map.put("kernelEvaluations", kernelEvaluations);
+        map.put("kernelCacheHits", kernelCacheHits);
+        map.put("kernelCacheMisses", kernelCacheMisses);
+        map.put("successfulSteps", successfulSteps);
+        map.put("failedSteps", failedSteps);
+        map.put("heuristicChoices", heuristicChoices);
+        map.put("unboundScanChoices", unboundScanChoices);
+        map.put("fullScanChoices", fullScanChoices);
+        map.put("noChoices", noChoices);
+        map.put("converged", converged ? 1 : 0);
+        map.put("rounds", rounds.size());
+        if (!rounds.isEmpty())
+            map.put("objective", rounds.get(rounds.size() - 1).objective);
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet())
+            map.put(phase.getKey() + "Millis", phase.getValue() / 1e6);
+        return map;
+    }
+}
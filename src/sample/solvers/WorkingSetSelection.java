@@ -0,0 +1,7 @@
+package sample.solvers;
+
+public interface WorkingSetSelection {
+    // picks the next two alphas to optimise into pair[0] and pair[1],
+    // returns false if no pair violates the optimality conditions
+    boolean select(SMO smo, int[] pair);
+}